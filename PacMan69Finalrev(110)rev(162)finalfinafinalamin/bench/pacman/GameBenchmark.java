@@ -0,0 +1,129 @@
+package pacman;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmarks for the game tick and its hot paths: collision checks, the
+// direction probe, the spawn tile draw and the ghost AI helpers. Every benchmark runs
+// for all three difficulty presets and for the default maze tiled 1x, 2x and 4x.
+//
+// Run with "ant bench" (see build.xml); results are written as JSON to
+// build/bench/results.json so two builds can be diffed.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    @Param({"1", "2", "3"})
+    int level;
+
+    @Param({"1", "2", "4"})
+    int mazeScale;
+
+    private static final int EATEN_FOOD = 20;
+
+    private GameWorld world;
+    // Same settings, played until some food is eaten; see eatSomeFood()
+    private GameWorld eatenWorld;
+    private ActorStore ghosts;
+    private final GhostSnapshot snapshot = new GhostSnapshot();
+    private final Random aiRandom = new Random(42);
+    private int inputCounter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        world = new GameWorld(scaleMaze(GameWorld.DEFAULT_TILE_MAP, mazeScale), 42);
+        startGame();
+        eatenWorld = eatSomeFood(new GameWorld(scaleMaze(GameWorld.DEFAULT_TILE_MAP, mazeScale), 42));
+    }
+
+    // Every spawn tile starts with food, so a fresh world has no free tile to
+    // draw. Plays with random turns until EATEN_FOOD food is eaten, starting
+    // over if the game ends first.
+    private GameWorld eatSomeFood(GameWorld eaten) {
+        Random turns = new Random(7);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            eaten.setLevelDifficulty(level);
+            eaten.restart();
+            int food = eaten.getFoodCount();
+            for (int t = 0; t < 20_000; t++) {
+                if (t % 8 == 0) {
+                    eaten.setPacmanDirection(eaten.directions[turns.nextInt(4)]);
+                }
+                GameWorld.Status status = eaten.tick();
+                if (status == GameWorld.Status.GAME_OVER || status == GameWorld.Status.GAME_WIN) break;
+                if (food - eaten.getFoodCount() >= EATEN_FOOD && eaten.randomFreeTile() >= 0) {
+                    return eaten;
+                }
+            }
+        }
+        throw new IllegalStateException("Pac-Man never ate " + EATEN_FOOD + " food");
+    }
+
+    private void startGame() {
+        world.setLevelDifficulty(level);
+        world.restart();
+        ghosts = world.getGhosts();
+        world.captureGhosts(snapshot, 0);
+    }
+
+    // Tiles the map scale x scale times; only the first copy keeps its Pac-Man
+    static String[] scaleMaze(String[] map, int scale) {
+        String[] scaled = new String[map.length * scale];
+        for (int copyRow = 0; copyRow < scale; copyRow++) {
+            for (int r = 0; r < map.length; r++) {
+                StringBuilder row = new StringBuilder(map[r].length() * scale);
+                for (int copyCol = 0; copyCol < scale; copyCol++) {
+                    boolean first = copyRow == 0 && copyCol == 0;
+                    row.append(first ? map[r] : map[r].replace(GameWorld.PACMAN, GameWorld.FOOD));
+                }
+                scaled[copyRow * map.length + r] = row.toString();
+            }
+        }
+        return scaled;
+    }
+
+    // One full game tick with a steady stream of direction changes. The world is
+    // restarted in place when a game ends so the measurement never stalls.
+    @Benchmark
+    public GameWorld.Status tick() {
+        inputCounter++;
+        if ((inputCounter & 31) == 0) {
+            world.setPacmanDirection(world.directions[(inputCounter >> 5) & 3]);
+        }
+        GameWorld.Status status = world.tick();
+        if (status == GameWorld.Status.GAME_OVER || status == GameWorld.Status.GAME_WIN) {
+            startGame();
+        }
+        return status;
+    }
+
+    @Benchmark
+    public boolean collision() {
+        return world.ghostTouches(0, world.getPacman());
+    }
+
+    @Benchmark
+    public boolean updateDirection() {
+        ghosts.turn(0, world.directions[inputCounter++ & 3], world.wallGrid);
+        return ghosts.moving[0];
+    }
+
+    @Benchmark
+    public int randomFreeTile() {
+        return eatenWorld.randomFreeTile();
+    }
+
+    @Benchmark
+    public char escapeDirection() {
+        return snapshot.escapeDirection(0, aiRandom);
+    }
+
+    @Benchmark
+    public char interceptDirection() {
+        return snapshot.interceptDirection(0);
+    }
+}
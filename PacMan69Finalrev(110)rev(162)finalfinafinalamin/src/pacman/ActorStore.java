@@ -0,0 +1,127 @@
+package pacman;
+
+import java.util.Arrays;
+
+// The ghosts, stored as parallel arrays rather than one object each: actor i
+// is x[i], y[i], direction[i] and so on. The tick walks these arrays in
+// order, so positions and velocities sit next to each other in memory and the
+// simple passes compile to tight loops. Every actor is size x size pixels.
+// Directions are stored as an index into DIRECTIONS.
+class ActorStore {
+    static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+    static final byte UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+    private static final int[] STEP_X = {0, 0, -1, 1};
+    private static final int[] STEP_Y = {-1, 1, 0, 0};
+
+    final int size;
+    int count;
+    char[] type;
+    int[] x, y, startX, startY;
+    int[] velocityX, velocityY, speed;
+    byte[] direction;
+    boolean[] moving, scared, frozen;
+
+    ActorStore(int size, int capacity) {
+        this.size = size;
+        allocate(Math.max(capacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        type = type == null ? new char[capacity] : Arrays.copyOf(type, capacity);
+        x = grow(x, capacity);
+        y = grow(y, capacity);
+        startX = grow(startX, capacity);
+        startY = grow(startY, capacity);
+        velocityX = grow(velocityX, capacity);
+        velocityY = grow(velocityY, capacity);
+        speed = grow(speed, capacity);
+        direction = direction == null ? new byte[capacity] : Arrays.copyOf(direction, capacity);
+        moving = grow(moving, capacity);
+        scared = grow(scared, capacity);
+        frozen = grow(frozen, capacity);
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static boolean[] grow(boolean[] array, int capacity) {
+        return array == null ? new boolean[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    // Adds an actor standing still at its start position, facing up; returns its index
+    int add(char actorType, int startX, int startY, int actorSpeed) {
+        if (count == type.length) {
+            allocate(count * 2);
+        }
+        int i = count++;
+        type[i] = actorType;
+        x[i] = this.startX[i] = startX;
+        y[i] = this.startY[i] = startY;
+        velocityX[i] = velocityY[i] = 0;
+        speed[i] = actorSpeed;
+        direction[i] = UP;
+        moving[i] = true;
+        scared[i] = false;
+        frozen[i] = false;
+        return i;
+    }
+
+    static byte directionIndex(char dir) {
+        switch (dir) {
+            case 'U': return UP;
+            case 'D': return DOWN;
+            case 'L': return LEFT;
+            default: return RIGHT;
+        }
+    }
+
+    char directionOf(int i) {
+        return DIRECTIONS[direction[i]];
+    }
+
+    void setSpeed(int actorSpeed) {
+        Arrays.fill(speed, 0, count, actorSpeed);
+    }
+
+    void updateVelocity(int i) {
+        int step = frozen[i] ? 0 : speed[i];
+        velocityX[i] = STEP_X[direction[i]] * step;
+        velocityY[i] = STEP_Y[direction[i]] * step;
+    }
+
+    // Turns the actor if one step that way stays clear of walls; otherwise it
+    // keeps its direction and counts as stuck
+    void turn(int i, char dir, TileGrid walls) {
+        byte previous = direction[i];
+        direction[i] = directionIndex(dir);
+        updateVelocity(i);
+        if (walls.collidesWithWall(x[i] + velocityX[i], y[i] + velocityY[i], size, size)) {
+            direction[i] = previous;
+            updateVelocity(i);
+            moving[i] = false;
+        } else {
+            moving[i] = true;
+        }
+    }
+
+    // Back to the start position facing right, no longer scared or frozen
+    void reset(int i) {
+        x[i] = startX[i];
+        y[i] = startY[i];
+        direction[i] = RIGHT;
+        moving[i] = true;
+        scared[i] = false;
+        frozen[i] = false;
+        updateVelocity(i);
+    }
+
+    void setScared(boolean isScared) {
+        Arrays.fill(scared, 0, count, isScared);
+        Arrays.fill(frozen, 0, count, false);
+    }
+}
@@ -0,0 +1,92 @@
+package pacman;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+// Loads the sprites in the background: every image is decoded and scaled to
+// its drawing size as a separate task, all in parallel, and the results are
+// packed into a SpriteAtlas. The game starts without waiting and draws
+// placeholder shapes until the atlas is done.
+class AssetLoader {
+    private AssetLoader() {}
+
+    // Sprites with the size (in pixels, all square) they are drawn at
+    static CompletableFuture<SpriteAtlas> load(Map<SpriteAtlas.Sprite, Integer> sizes) {
+        Map<SpriteAtlas.Sprite, CompletableFuture<BufferedImage>> tasks = new EnumMap<>(SpriteAtlas.Sprite.class);
+        for (Map.Entry<SpriteAtlas.Sprite, Integer> entry : sizes.entrySet()) {
+            SpriteAtlas.Sprite sprite = entry.getKey();
+            int size = entry.getValue();
+            tasks.put(sprite, CompletableFuture.supplyAsync(() -> decode(sprite.resource, size)));
+        }
+
+        return CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[0]))
+            .thenApply(done -> {
+                Map<SpriteAtlas.Sprite, BufferedImage> images = new EnumMap<>(SpriteAtlas.Sprite.class);
+                for (Map.Entry<SpriteAtlas.Sprite, CompletableFuture<BufferedImage>> task : tasks.entrySet()) {
+                    BufferedImage image = task.getValue().join();
+                    if (image != null) {
+                        images.put(task.getKey(), image);
+                    }
+                }
+                return new SpriteAtlas(images, screenConfiguration());
+            })
+            .exceptionally(e -> {
+                System.out.println("Error loading images: " + e.getMessage());
+                return new SpriteAtlas(Collections.emptyMap(), null);
+            });
+    }
+
+    // Images made compatible with this are kept in video memory where possible
+    static GraphicsConfiguration screenConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) return null;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+    }
+
+    // Null when the image is missing or unreadable
+    private static BufferedImage decode(String resource, int size) {
+        try (InputStream in = AssetLoader.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                System.out.println("Could not find image file: " + resource);
+                return null;
+            }
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) {
+                System.out.println("Error loading image " + resource + ": unknown format");
+                return null;
+            }
+            return scale(image, size, size);
+        } catch (IOException e) {
+            System.out.println("Error loading image " + resource + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Pixel art is enlarged with nearest neighbour, which keeps it sharp;
+    // large images are halved step by step and filtered so they shrink
+    // without aliasing
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = resize(current, current.getWidth() / 2, current.getHeight() / 2,
+                             RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        boolean shrinking = current.getWidth() > width || current.getHeight() > height;
+        return resize(current, width, height, shrinking
+            ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+            : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height, Object interpolation) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return result;
+    }
+}
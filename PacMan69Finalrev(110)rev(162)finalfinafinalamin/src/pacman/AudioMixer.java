@@ -0,0 +1,201 @@
+package pacman;
+
+import java.io.*;
+import java.util.concurrent.*;
+import javax.sound.sampled.*;
+import javazoom.jl.decoder.*;
+
+// Background music on one long-lived thread. Each MP3 is decoded to PCM once
+// and cached; looping replays the cached samples straight into the line, so
+// there is no re-decoding and no gap at the loop point. Switching tracks is a
+// command on a queue instead of a new thread. Decode times and buffer
+// underruns (the line ran dry before the next chunk came) go to the profiler,
+// and track switches and decodes are also Flight Recorder events.
+class AudioMixer {
+    // Decoded track: 16-bit little-endian PCM
+    private static class Track {
+        final byte[] pcm;
+        final AudioFormat format;
+
+        Track(byte[] pcm, AudioFormat format) {
+            this.pcm = pcm;
+            this.format = format;
+        }
+    }
+
+    private static class Command {
+        final String track; // null means stop
+
+        Command(String track) {
+            this.track = track;
+        }
+    }
+
+    private static final int CHUNK_BYTES = 4096;
+
+    private final BlockingQueue<Command> commands = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Track>> cache = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private final TickProfiler profiler;
+
+    AudioMixer(TickProfiler profiler) {
+        this.profiler = profiler;
+        thread = new Thread(this::mix, "audio-mixer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Starts decoding a track in the background so a later play() starts at once
+    void preload(String resource) {
+        load(resource);
+    }
+
+    // Loops the given track, replacing whatever is playing
+    void play(String resource) {
+        load(resource);
+        commands.offer(new Command(resource));
+    }
+
+    void stop() {
+        commands.offer(new Command(null));
+    }
+
+    private CompletableFuture<Track> load(String resource) {
+        return cache.computeIfAbsent(resource,
+            r -> CompletableFuture.supplyAsync(() -> decode(r)));
+    }
+
+    private Track decode(String resource) {
+        GameEvents.TrackDecode event = new GameEvents.TrackDecode();
+        event.begin();
+        long start = System.nanoTime();
+        Track track = null;
+        try {
+            track = decodeTrack(resource);
+            return track;
+        } finally {
+            profiler.record(TickProfiler.Phase.AUDIO_DECODE, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.track = resource;
+                event.bytes = track != null ? track.pcm.length : 0;
+                event.commit();
+            }
+        }
+    }
+
+    private Track decodeTrack(String resource) {
+        InputStream is = getClass().getResourceAsStream(resource);
+        if (is == null) {
+            System.out.println("Could not find music file: " + resource);
+            return null;
+        }
+
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream(1 << 20);
+        int sampleRate = 44100;
+        int channels = 2;
+        Bitstream bitstream = new Bitstream(new BufferedInputStream(is));
+        try {
+            Decoder decoder = new Decoder();
+            Header header;
+            while ((header = bitstream.readFrame()) != null) {
+                SampleBuffer output = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+                sampleRate = output.getSampleFrequency();
+                channels = output.getChannelCount();
+                short[] samples = output.getBuffer();
+                int length = output.getBufferLength();
+                for (int i = 0; i < length; i++) {
+                    pcm.write(samples[i]);
+                    pcm.write(samples[i] >> 8);
+                }
+                bitstream.closeFrame();
+            }
+        } catch (JavaLayerException e) {
+            System.out.println("Error decoding music: " + e.getMessage());
+        } finally {
+            try {
+                bitstream.close();
+            } catch (BitstreamException e) {
+                System.out.println("Error closing stream: " + e.getMessage());
+            }
+        }
+        return new Track(pcm.toByteArray(), new AudioFormat(sampleRate, 16, channels, true, false));
+    }
+
+    private void mix() {
+        SourceDataLine line = null;
+        Track current = null;
+        int position = 0;
+        boolean primed = false;
+
+        while (true) {
+            try {
+                // Block while idle; while playing only check for new commands
+                Command command = current == null ? commands.take() : commands.poll();
+                if (command != null) {
+                    GameEvents.TrackSwitch event = new GameEvents.TrackSwitch();
+                    event.begin();
+                    if (line != null) {
+                        line.stop();
+                        line.flush();
+                    }
+                    current = null;
+                    position = 0;
+                    primed = false;
+                    if (command.track != null) {
+                        Track track = load(command.track).join();
+                        if (track != null && track.pcm.length > 0) {
+                            line = openLine(line, track.format);
+                            if (line != null) {
+                                line.start();
+                                current = track;
+                            }
+                        }
+                    }
+                    if (event.shouldCommit()) {
+                        event.track = command.track;
+                        event.playing = current != null;
+                        event.commit();
+                    }
+                    continue;
+                }
+
+                // Feed one chunk, wrapping around to the start of the track
+                int length = Math.min(CHUNK_BYTES, current.pcm.length - position);
+                if (primed && line.available() >= line.getBufferSize()) {
+                    profiler.underrun();
+                }
+                primed = true;
+                line.write(current.pcm, position, length);
+                position += length;
+                if (position >= current.pcm.length) {
+                    position = 0;
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (CompletionException e) {
+                System.out.println("Error playing music: " + e.getMessage());
+            }
+        }
+
+        if (line != null) {
+            line.close();
+        }
+    }
+
+    private SourceDataLine openLine(SourceDataLine line, AudioFormat format) {
+        if (line != null && line.getFormat().matches(format)) {
+            return line;
+        }
+        if (line != null) {
+            line.close();
+        }
+        try {
+            SourceDataLine newLine = AudioSystem.getSourceDataLine(format);
+            newLine.open(format);
+            return newLine;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.out.println("Error opening audio line: " + e.getMessage());
+            return null;
+        }
+    }
+}
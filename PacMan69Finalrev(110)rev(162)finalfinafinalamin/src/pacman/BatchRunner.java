@@ -0,0 +1,184 @@
+package pacman;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs many independent headless games in parallel and reports throughput and
+// outcomes per starting level. Used to tune ghostChaseProbability and
+// ghostChaseRange without playing every game in real time.
+//
+//   java -cp PacMan.jar pacman.BatchRunner --games 5000 --level all
+//        [--seed 1] [--max-ticks 36000] [--threads 8]
+//        [--chase-probability 0.8] [--chase-range 7]
+//        [--ghost-scheduling inline|parallel|pipelined]
+public class BatchRunner {
+    // Result of a single simulated game
+    static class GameResult {
+        final int startLevel;
+        final int finalLevel;
+        final GameWorld.Status outcome;
+        final int score;
+        final long ticks;
+
+        GameResult(int startLevel, int finalLevel, GameWorld.Status outcome, int score, long ticks) {
+            this.startLevel = startLevel;
+            this.finalLevel = finalLevel;
+            this.outcome = outcome;
+            this.score = score;
+            this.ticks = ticks;
+        }
+    }
+
+    // Aggregated results of all games that started on one level
+    static class LevelStats {
+        int games, wins, losses, timeouts;
+        long totalScore, totalTicks, levelsCleared;
+        int bestScore;
+
+        void add(GameResult result) {
+            games++;
+            if (result.outcome == GameWorld.Status.GAME_WIN) wins++;
+            else if (result.outcome == GameWorld.Status.GAME_OVER) losses++;
+            else timeouts++;
+            totalScore += result.score;
+            totalTicks += result.ticks;
+            levelsCleared += result.finalLevel - result.startLevel
+                + (result.outcome == GameWorld.Status.GAME_WIN ? 1 : 0);
+            bestScore = Math.max(bestScore, result.score);
+        }
+    }
+
+    private final int games;
+    private final int[] levels;
+    private final long seed;
+    private final long maxTicks;
+    private final int threads;
+    private final double chaseProbability;
+    private final int chaseRange;
+    private final GhostScheduler.Mode scheduling;
+
+    BatchRunner(int games, int[] levels, long seed, long maxTicks, int threads,
+                double chaseProbability, int chaseRange, GhostScheduler.Mode scheduling) {
+        this.games = games;
+        this.levels = levels;
+        this.seed = seed;
+        this.maxTicks = maxTicks;
+        this.threads = threads;
+        this.chaseProbability = chaseProbability;
+        this.chaseRange = chaseRange;
+        this.scheduling = scheduling;
+    }
+
+    // Plays one game to the end (or maxTicks) with a simple random autopilot.
+    // Both the world and the autopilot get their own seeded Random, so a game
+    // is fully determined by its seed.
+    GameResult playGame(int startLevel, long gameSeed) {
+        GameWorld world = new GameWorld(gameSeed);
+        world.setChaseOverrides(chaseProbability, chaseRange);
+        world.setGhostScheduling(scheduling);
+        world.setLevelDifficulty(startLevel);
+        world.restart();
+
+        Random input = new Random(~gameSeed);
+        int lastX = -1, lastY = -1;
+        int turnTimer = 0;
+        GameWorld.Status status = GameWorld.Status.RUNNING;
+
+        while (world.getTickCount() < maxTicks) {
+            GameWorld.Block pacman = world.getPacman();
+            boolean stuck = pacman.getX() == lastX && pacman.getY() == lastY;
+            if (stuck || --turnTimer <= 0) {
+                world.setPacmanDirection(world.directions[input.nextInt(4)]);
+                turnTimer = 15 + input.nextInt(30);
+            }
+            lastX = pacman.getX();
+            lastY = pacman.getY();
+
+            status = world.tick();
+            if (status == GameWorld.Status.GAME_OVER || status == GameWorld.Status.GAME_WIN) break;
+        }
+        return new GameResult(startLevel, world.getCurrentLevel(), status, world.getScore(), world.getTickCount());
+    }
+
+    void run() throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Callable<GameResult>> tasks = new ArrayList<>();
+        for (int level : levels) {
+            for (int i = 0; i < games; i++) {
+                final int startLevel = level;
+                final long gameSeed = seed + (long) level * 1_000_003L + i;
+                tasks.add(() -> playGame(startLevel, gameSeed));
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Future<GameResult>> futures = pool.invokeAll(tasks);
+        Map<Integer, LevelStats> stats = new TreeMap<>();
+        long totalTicks = 0;
+        for (Future<GameResult> future : futures) {
+            GameResult result = future.get();
+            stats.computeIfAbsent(result.startLevel, l -> new LevelStats()).add(result);
+            totalTicks += result.ticks;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("Simulated %d games, %d ticks in %.2f s on %d threads%n",
+            tasks.size(), totalTicks, seconds, threads);
+        System.out.printf("Throughput: %.0f ticks/s, %.1f games/s%n",
+            totalTicks / seconds, tasks.size() / seconds);
+        System.out.printf("Chase probability: %s, chase range: %s%n",
+            chaseProbability < 0 ? "level preset" : String.valueOf(chaseProbability),
+            chaseRange < 0 ? "level preset" : chaseRange + " tiles");
+        System.out.println("Ghost scheduling: " + scheduling);
+        System.out.println();
+        System.out.printf("%-6s %7s %7s %7s %8s %10s %9s %10s %11s%n",
+            "Level", "Games", "Wins", "Losses", "Timeouts", "Avg score", "Best", "Avg ticks", "Avg cleared");
+        for (Map.Entry<Integer, LevelStats> entry : stats.entrySet()) {
+            LevelStats s = entry.getValue();
+            System.out.printf("%-6d %7d %7d %7d %8d %10.1f %9d %10.1f %11.2f%n",
+                entry.getKey(), s.games, s.wins, s.losses, s.timeouts,
+                (double) s.totalScore / s.games, s.bestScore,
+                (double) s.totalTicks / s.games, (double) s.levelsCleared / s.games);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 1000;
+        String level = "all";
+        long seed = 1;
+        long maxTicks = 60L * 60 * 10; // ten minutes of game time
+        int threads = Runtime.getRuntime().availableProcessors();
+        double chaseProbability = -1;
+        int chaseRange = -1;
+        GhostScheduler.Mode scheduling = GhostScheduler.Mode.INLINE;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games": games = Integer.parseInt(value); break;
+                case "--level": level = value; break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--max-ticks": maxTicks = Long.parseLong(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--chase-probability": chaseProbability = Double.parseDouble(value); break;
+                case "--chase-range": chaseRange = Integer.parseInt(value); break;
+                case "--ghost-scheduling": scheduling = GhostScheduler.Mode.valueOf(value.toUpperCase()); break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        int[] levels;
+        if (level.equals("all")) {
+            levels = new int[LevelPack.standard().size()];
+            for (int l = 0; l < levels.length; l++) {
+                levels[l] = l + 1;
+            }
+        } else {
+            levels = new int[] {Integer.parseInt(level)};
+        }
+        new BatchRunner(games, levels, seed, maxTicks, threads, chaseProbability, chaseRange, scheduling).run();
+    }
+}
@@ -0,0 +1,70 @@
+package pacman;
+
+// The part of the maze shown in the window, in world pixels. It follows a
+// point (Pac-Man) but never scrolls past the maze edges; a maze smaller than
+// the view is centred instead. Rendering asks it which tiles and blocks are
+// visible, so a frame only draws what is on screen.
+class Camera {
+    private final int viewWidth;
+    private final int viewHeight;
+    private int x, y;
+
+    Camera(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    int getX() {
+        return x;
+    }
+
+    int getY() {
+        return y;
+    }
+
+    int getViewWidth() {
+        return viewWidth;
+    }
+
+    int getViewHeight() {
+        return viewHeight;
+    }
+
+    void follow(int targetX, int targetY, int worldWidth, int worldHeight) {
+        x = clamp(targetX - viewWidth / 2, worldWidth, viewWidth);
+        y = clamp(targetY - viewHeight / 2, worldHeight, viewHeight);
+    }
+
+    private static int clamp(int position, int worldSize, int viewSize) {
+        if (worldSize <= viewSize) {
+            return (worldSize - viewSize) / 2;
+        }
+        return Math.max(0, Math.min(position, worldSize - viewSize));
+    }
+
+    // Visible tile range, inclusive; may reach past the maze, callers clip
+    int firstColumn(int tileSize) {
+        return Math.floorDiv(x, tileSize);
+    }
+
+    int lastColumn(int tileSize) {
+        return Math.floorDiv(x + viewWidth - 1, tileSize);
+    }
+
+    int firstRow(int tileSize) {
+        return Math.floorDiv(y, tileSize);
+    }
+
+    int lastRow(int tileSize) {
+        return Math.floorDiv(y + viewHeight - 1, tileSize);
+    }
+
+    boolean isVisible(GameWorld.Block block) {
+        return isVisible(block.x, block.y, block.width, block.height);
+    }
+
+    boolean isVisible(int blockX, int blockY, int width, int height) {
+        return blockX < x + viewWidth && blockX + width > x &&
+               blockY < y + viewHeight && blockY + height > y;
+    }
+}
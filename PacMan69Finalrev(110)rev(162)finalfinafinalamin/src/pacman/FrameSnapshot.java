@@ -0,0 +1,130 @@
+package pacman;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Everything one frame shows, copied out of the world and the menus after an
+// update. The renderer only reads snapshots, so painting never touches live
+// game state and can run at its own rate: it draws whatever snapshot is the
+// latest. Snapshots are reused rather than allocated per frame: PacMan keeps
+// three in a TripleBuffer and the game loop refills the one no reader holds.
+// Parts that rarely change are only copied when they did: the food tiles
+// (when the map or the food count changed) and the ghost arrays (grown when
+// there are more ghosts than before). The wall grid is replaced, not
+// changed, when a map loads, so it is shared.
+final class FrameSnapshot {
+    // Screen and menu selection
+    PacMan.GameState state;
+    int selectedOption;
+    int selectedLevel;
+
+    // Maze
+    int mapVersion = -1;
+    TileGrid walls;
+    int rows, columns;
+    final BitSet food = new BitSet(); // tiles with food left
+    int foodCount;
+
+    // Pac-Man
+    int pacmanX, pacmanY, pacmanSize;
+    char pacmanDirection;
+    boolean mouthOpen;
+
+    // Ghosts, indexed like the world's ActorStore; the arrays may be longer
+    // than ghostCount
+    int ghostCount, ghostSize;
+    int[] ghostX = new int[0], ghostY = new int[0];
+    char[] ghostType = new char[0];
+    boolean[] ghostScared = new boolean[0];
+
+    // Pickups; size 0 when there is none
+    int cherryX, cherryY, cherrySize;
+    int powerFoodX, powerFoodY, powerFoodSize;
+
+    // HUD
+    int score, highScore, level, lives;
+    boolean poweredUp;
+    int powerUpTicksLeft;
+
+    // Set when published: counts up from 1, and System.nanoTime() of the
+    // oldest key press this is the first snapshot to show (or 0) for
+    // measuring key to screen latency
+    long sequence;
+    long inputAt;
+
+    void fill(GameWorld world, PacMan.GameState state, int selectedOption, int selectedLevel, boolean mouthOpen) {
+        this.state = state;
+        this.selectedOption = selectedOption;
+        this.selectedLevel = selectedLevel;
+
+        walls = world.wallGrid;
+        rows = world.getRowCount();
+        columns = world.getColumnCount();
+        if (mapVersion != world.getMapVersion() || foodCount != world.getFoodCount()) {
+            mapVersion = world.getMapVersion();
+            foodCount = world.getFoodCount();
+            food.clear();
+            food.or(world.getFoodTiles());
+        }
+
+        GameWorld.Block pacman = world.getPacman();
+        pacmanX = pacman.x;
+        pacmanY = pacman.y;
+        pacmanSize = pacman.width;
+        pacmanDirection = pacman.direction;
+        this.mouthOpen = mouthOpen;
+
+        ActorStore ghosts = world.getGhosts();
+        ghostCount = ghosts.count;
+        ghostSize = ghosts.size;
+        if (ghostX.length < ghostCount) {
+            ghostX = new int[ghostCount];
+            ghostY = new int[ghostCount];
+            ghostType = new char[ghostCount];
+            ghostScared = new boolean[ghostCount];
+        }
+        System.arraycopy(ghosts.x, 0, ghostX, 0, ghostCount);
+        System.arraycopy(ghosts.y, 0, ghostY, 0, ghostCount);
+        System.arraycopy(ghosts.type, 0, ghostType, 0, ghostCount);
+        System.arraycopy(ghosts.scared, 0, ghostScared, 0, ghostCount);
+
+        GameWorld.Block cherry = world.getCherry();
+        cherryX = cherry != null ? cherry.x : 0;
+        cherryY = cherry != null ? cherry.y : 0;
+        cherrySize = cherry != null ? cherry.width : 0;
+        GameWorld.Block powerFood = world.getPowerFood();
+        powerFoodX = powerFood != null ? powerFood.x : 0;
+        powerFoodY = powerFood != null ? powerFood.y : 0;
+        powerFoodSize = powerFood != null ? powerFood.width : 0;
+
+        score = world.getScore();
+        level = world.getCurrentLevel();
+        highScore = world.getHighScore(level);
+        lives = world.getLives();
+        poweredUp = world.isPoweredUp();
+        powerUpTicksLeft = world.getPowerUpTicksLeft();
+    }
+
+    // Whether both draw the same picture; sequence and inputAt don't count.
+    // Within one map version food is only ever eaten, so the food count
+    // stands in for the tiles.
+    boolean looksLike(FrameSnapshot other) {
+        return other != null
+            && state == other.state && selectedOption == other.selectedOption
+            && selectedLevel == other.selectedLevel
+            && mapVersion == other.mapVersion && walls == other.walls && foodCount == other.foodCount
+            && pacmanX == other.pacmanX && pacmanY == other.pacmanY && pacmanSize == other.pacmanSize
+            && pacmanDirection == other.pacmanDirection && mouthOpen == other.mouthOpen
+            && ghostCount == other.ghostCount && ghostSize == other.ghostSize
+            && Arrays.equals(ghostX, 0, ghostCount, other.ghostX, 0, ghostCount)
+            && Arrays.equals(ghostY, 0, ghostCount, other.ghostY, 0, ghostCount)
+            && Arrays.equals(ghostType, 0, ghostCount, other.ghostType, 0, ghostCount)
+            && Arrays.equals(ghostScared, 0, ghostCount, other.ghostScared, 0, ghostCount)
+            && cherryX == other.cherryX && cherryY == other.cherryY && cherrySize == other.cherrySize
+            && powerFoodX == other.powerFoodX && powerFoodY == other.powerFoodY
+            && powerFoodSize == other.powerFoodSize
+            && score == other.score && highScore == other.highScore && level == other.level
+            && lives == other.lives && poweredUp == other.poweredUp
+            && powerUpTicksLeft == other.powerUpTicksLeft;
+    }
+}
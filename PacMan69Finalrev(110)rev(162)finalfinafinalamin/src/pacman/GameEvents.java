@@ -0,0 +1,108 @@
+package pacman;
+
+import jdk.jfr.*;
+
+// Flight Recorder events, so a JFR recording of a running game shows ticks,
+// level loads, resets and music switches next to GC and safepoint pauses.
+// Use the usual idiom: create, begin(), do the work, then fill in the fields
+// and commit() only if shouldCommit(). With no recording running that is a
+// few inlined no-op calls and the event object is never really allocated.
+final class GameEvents {
+    private static final String CATEGORY = "Pac-Man";
+
+    private GameEvents() {}
+
+    @Name("pacman.Tick")
+    @Label("Game Tick")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Tick extends Event {
+        @Label("Tick")
+        long tick;
+
+        @Label("Level")
+        int level;
+
+        @Label("Ghosts")
+        int ghosts;
+
+        @Label("Food Left")
+        int food;
+
+        @Label("Status")
+        String status;
+    }
+
+    @Name("pacman.LoadMap")
+    @Label("Load Map")
+    @Category(CATEGORY)
+    static class LoadMap extends Event {
+        @Label("Level")
+        int level;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int columns;
+
+        @Label("Walls")
+        int walls;
+
+        @Label("Ghosts")
+        int ghosts;
+
+        @Label("Food")
+        int food;
+    }
+
+    @Name("pacman.SpawnInitialItems")
+    @Label("Spawn Initial Items")
+    @Category(CATEGORY)
+    static class SpawnInitialItems extends Event {
+        @Label("Level")
+        int level;
+
+        @Label("Free Tiles")
+        int freeTiles;
+    }
+
+    @Name("pacman.ResetPositions")
+    @Label("Reset Positions")
+    @Category(CATEGORY)
+    static class ResetPositions extends Event {
+        @Label("Level")
+        int level;
+
+        @Label("Lives")
+        int lives;
+    }
+
+    // From the command being taken off the queue to the line playing it,
+    // including any wait for the track to finish decoding
+    @Name("pacman.TrackSwitch")
+    @Label("Music Track Switch")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class TrackSwitch extends Event {
+        @Label("Track")
+        @Description("Resource of the new track, null when music stops")
+        String track;
+
+        @Label("Playing")
+        boolean playing;
+    }
+
+    @Name("pacman.TrackDecode")
+    @Label("Music Track Decode")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class TrackDecode extends Event {
+        @Label("Track")
+        String track;
+
+        @Label("PCM Bytes")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -0,0 +1,989 @@
+package pacman;
+
+import java.util.*;
+
+// All game rules, without any AWT/Swing dependency. One call to tick() is one
+// fixed 1/60 s step; advance(n) runs n of them back to back, so the game can be
+// stepped headless and much faster than real time. The PacMan panel only
+// renders this state and feeds it input.
+public class GameWorld {
+    // Result of a tick
+    public enum Status {
+        RUNNING, LEVEL_CLEARED, GAME_OVER, GAME_WIN
+    }
+
+    public static final int TICKS_PER_SECOND = 60;
+
+    // Tile types, shared by the map and the blocks built from it
+    public static final char WALL = 'X';
+    public static final char FOOD = ' ';
+    public static final char PACMAN = 'P';
+    public static final char RED_GHOST = 'r';
+    public static final char BLUE_GHOST = 'b';
+    public static final char PINK_GHOST = 'p';
+    public static final char ORANGE_GHOST = 'o';
+    public static final char CHERRY = 'c';
+    public static final char POWER_FOOD = 'f';
+    // Open tile without food, used for tunnels and pens
+    public static final char TUNNEL = 'O';
+
+    public class Block {
+        int x, y, width, height;
+        final char type;
+        int startX, startY;
+        char direction = 'U';
+        int velocityX = 0, velocityY = 0;
+        int speed;
+        boolean moving = true;
+        boolean isScared = false;
+        boolean isFrozen = false;
+
+        Block(char type, int x, int y, int width, int height) {
+            this.type = type;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.startX = x;
+            this.startY = y;
+        }
+
+        void updateDirection(char direction) {
+            char prevDirection = this.direction;
+            this.direction = direction;
+            updateVelocity();
+
+            // Test movement
+            int oldX = x, oldY = y;
+            x += velocityX;
+            y += velocityY;
+
+            boolean canMove = !hitsWall(this);
+
+            if (!canMove) {
+                x = oldX;
+                y = oldY;
+                this.direction = prevDirection;
+                updateVelocity();
+                this.moving = false;
+            } else {
+                this.moving = true;
+                x = oldX;
+                y = oldY;
+            }
+        }
+
+        void updateVelocity() {
+            if (isFrozen) {
+                this.velocityX = 0;
+                this.velocityY = 0;
+                return;
+            }
+
+            int effectiveSpeed = this.speed;
+            if (this == pacman && isPoweredUp) {
+                effectiveSpeed += 1;
+            }
+
+            switch (this.direction) {
+                case 'U': velocityX = 0; velocityY = -effectiveSpeed; break;
+                case 'D': velocityX = 0; velocityY = effectiveSpeed; break;
+                case 'L': velocityX = -effectiveSpeed; velocityY = 0; break;
+                case 'R': velocityX = effectiveSpeed; velocityY = 0; break;
+            }
+        }
+
+        void reset() {
+            this.x = this.startX;
+            this.y = this.startY;
+            this.direction = 'R';
+            this.moving = true;
+            this.isScared = false;
+            this.isFrozen = false;
+            updateVelocity();
+        }
+
+        public int getX() { return x; }
+        public int getY() { return y; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public char getType() { return type; }
+        public char getDirection() { return direction; }
+        public boolean isScared() { return isScared; }
+    }
+
+    // Game board dimensions, from the maze of the current level
+    private int rowCount;
+    private int columnCount;
+    private final int tileSize = 32;
+    private final int COLLISION_PADDING = 2;
+    // Food dots are drawn centered in their tile
+    static final int FOOD_SIZE = 4;
+    static final int FOOD_OFFSET = 14;
+    // Power food is half a tile, centered
+    static final int POWER_FOOD_SIZE = 16;
+
+    // Levels
+    private final LevelPack levels;
+    private final int MAX_LEVEL;
+    private int currentLevel = 1;
+    private Status status = Status.RUNNING;
+    private long tickCount = 0;
+    // Bumped by every loadMap() so renderers know when cached map layers are stale
+    private int mapVersion = 0;
+
+    // Score
+    private final Map<Integer, Integer> highScores = new HashMap<>();
+    private int currentScore = 0;
+    private int lives = 3;
+
+    // Game difficulty variables
+    private int pacmanSpeed = 4;
+    private int ghostBaseSpeed = 2;
+    private int ghostChaseRange = 5 * tileSize;
+    private double ghostChaseProbability = 0.7;
+    private int ghostDirectionChangeCounter = 0;
+    private final int GHOST_DIRECTION_CHANGE_INTERVAL = 30;
+
+    // Tuning overrides applied on top of every level preset; negative means unset
+    private double chaseProbabilityOverride = -1;
+    private int chaseRangeOverride = -1;
+
+    // Power-up variables
+    private boolean isPoweredUp = false;
+    private int powerUpTimer = 0;
+    private final int POWER_UP_DURATION = 300;
+
+    // Spawn timers
+    private int cherrySpawnTimer = 0;
+    private int powerFoodSpawnTimer = 0;
+    private final int CHERRY_SPAWN_INTERVAL = 500;
+    private final int POWER_FOOD_SPAWN_INTERVAL = 800;
+
+    // Movement
+    final char[] directions = {'U', 'D', 'L', 'R'};
+    final Random random;
+
+    // Default tileMap with consistent row lengths
+    public static final String[] DEFAULT_TILE_MAP = {
+        "XXXXXXXXXXXXXXXXXXX",
+        "X        X        X",
+        "X XX XXX X XXX XX X",
+        "X                 X",
+        "X XX X XXXXX X XX X",
+        "X    X       X    X",
+        "XXXX XXXX XXXX XXXX",
+        "X    X       X    X",
+        "XXXX X XXrXX X XXXX",
+        "X       bpo       X",
+        "XXXX X XXXXX X XXXX",
+        "X    X       X    X",
+        "XXXX X XXXXX X XXXX",
+        "X        X        X",
+        "X XX XXX X XXX XX X",
+        "X  X     P     X  X",
+        "XX X X XXXXX X X XX",
+        "X    X   X   X    X",
+        "X XXXXXX X XXXXXX X",
+        "X                 X",
+        "XXXXXXXXXXXXXXXXXXX"
+    };
+    private String[] tileMap;
+
+    // Game objects
+    final HashSet<Block> walls = new HashSet<>();
+    // One bit per tile that still has its food dot, plus a count of the set
+    // bits so the level-clear test does not have to scan the map
+    final BitSet foods = new BitSet();
+    int foodCount;
+    // Ghosts in map order, which is also the order they update in
+    final ActorStore ghosts = new ActorStore(tileSize, 4);
+    // Ghosts and pickups by position, so Pac-Man is only tested against what
+    // is near him. Ghost i is id i; the cherry and power food come after the
+    // ghosts. nearby is scratch space for tick().
+    SpatialHash entities;
+    private final BitSet nearby = new BitSet();
+    TileGrid wallGrid;
+    NavigationGrid navigation;
+    private Maze navigationMaze;
+    // Ghost AI: a strategy per ghost colour, a Random per ghost (so decisions
+    // can be made on other threads and still replay the same) and the scheduler
+    // that runs them. The epoch changes whenever ghosts jump rather than move,
+    // which makes decisions computed ahead of time stale. Strategies and
+    // Randoms are also kept indexed like the ghosts so a snapshot can copy them.
+    private final Map<Character, GhostStrategy> ghostStrategies = new HashMap<>();
+    private GhostStrategy[] ghostStrategyOf = new GhostStrategy[0];
+    private Random[] ghostRandoms = new Random[0];
+    private final GhostScheduler ghostScheduler = new GhostScheduler();
+    private int aiEpoch = 0;
+    // Times the phases of each tick when set; null in batch runs and replays
+    private TickProfiler profiler;
+    // Food tiles of the map, where cherries and power food may spawn
+    private int[] spawnTiles;
+    // Spawn tiles that currently hold no food, cherry or power food; kept up to
+    // date as things are eaten and spawned so a spawn is one random draw
+    private TileSet freeTiles;
+    Block pacman;
+    Block cherry;
+    Block powerFood;
+
+    // Worlds on the standard level pack (see LevelPack)
+    public GameWorld() {
+        this(LevelPack.standard(), new Random());
+    }
+
+    public GameWorld(long seed) {
+        this(LevelPack.standard(), new Random(seed));
+    }
+
+    // One map for every level; any rectangular map using the DEFAULT_TILE_MAP
+    // characters
+    public GameWorld(String[] tileMap, long seed) {
+        this(LevelPack.repeat(new Maze(tileMap), LevelPack.DEFAULT_LEVELS), new Random(seed));
+    }
+
+    GameWorld(LevelPack levels, long seed) {
+        this(levels, new Random(seed));
+    }
+
+    private GameWorld(LevelPack levels, Random random) {
+        this.levels = levels;
+        this.MAX_LEVEL = levels.size();
+        this.random = random;
+
+        // Initialize high scores
+        for (int i = 1; i <= MAX_LEVEL; i++) {
+            highScores.put(i, 0);
+        }
+
+        setLevelDifficulty(currentLevel);
+        loadMap();
+        initializeGhosts();
+    }
+
+    // Levels outside the pack are clamped to it
+    public void setLevelDifficulty(int level) {
+        currentLevel = Math.max(1, Math.min(level, MAX_LEVEL));
+        aiEpoch++;
+        switch(currentLevel) {
+            case 1: // Easy
+                pacmanSpeed = 4;
+                ghostBaseSpeed = 2;
+                ghostChaseProbability = 0.7;
+                ghostChaseRange = 5 * tileSize;
+                break;
+            case 2: // Medium
+                pacmanSpeed = 5;
+                ghostBaseSpeed = 3;
+                ghostChaseProbability = 0.8;
+                ghostChaseRange = 7 * tileSize;
+                break;
+            default: // Hard, also used past level 3
+                pacmanSpeed = 6;
+                ghostBaseSpeed = 4;
+                ghostChaseProbability = 0.9;
+                ghostChaseRange = 9 * tileSize;
+                break;
+        }
+        // A maze may set its own difficulty
+        Maze maze = levels.maze(currentLevel);
+        if (maze.pacmanSpeed > 0) pacmanSpeed = maze.pacmanSpeed;
+        if (maze.ghostSpeed > 0) ghostBaseSpeed = maze.ghostSpeed;
+        if (maze.chaseProbability >= 0) ghostChaseProbability = maze.chaseProbability;
+        if (maze.chaseRangeTiles >= 0) ghostChaseRange = maze.chaseRangeTiles * tileSize;
+        if (chaseProbabilityOverride >= 0) {
+            ghostChaseProbability = chaseProbabilityOverride;
+        }
+        if (chaseRangeOverride >= 0) {
+            ghostChaseRange = chaseRangeOverride * tileSize;
+        }
+
+        if (pacman != null) {
+            pacman.speed = pacmanSpeed;
+        }
+        ghosts.setSpeed(ghostBaseSpeed);
+    }
+
+    // Overrides the ghost chase settings of every level; pass a negative value
+    // to go back to the level preset
+    public void setChaseOverrides(double probability, int rangeTiles) {
+        chaseProbabilityOverride = probability;
+        chaseRangeOverride = rangeTiles;
+        setLevelDifficulty(currentLevel);
+    }
+
+    // Starts the current level over with a fresh score and lives
+    public void restart() {
+        ghostDirectionChangeCounter = 0;
+        cherrySpawnTimer = 0;
+        powerFoodSpawnTimer = 0;
+        loadMap();
+        initializeGhosts();
+        resetPositions();
+        currentScore = 0;
+        lives = 3;
+        status = Status.RUNNING;
+    }
+
+    // Same as restart(), but with the random generator reseeded first, so the
+    // game that follows depends only on the seed, the level and the input
+    public void restart(long seed) {
+        random.setSeed(seed);
+        restart();
+    }
+
+    // Moves on to the next level, keeping score and lives
+    public void nextLevel() {
+        currentLevel++;
+        setLevelDifficulty(currentLevel);
+        loadMap();
+        initializeGhosts();
+        resetPositions();
+        status = Status.RUNNING;
+    }
+
+    public void loadMap() {
+        GameEvents.LoadMap event = new GameEvents.LoadMap();
+        event.begin();
+        walls.clear();
+        foods.clear();
+        foodCount = 0;
+        ghosts.clear();
+        cherry = null;
+        powerFood = null;
+        mapVersion++;
+        aiEpoch++;
+        Maze maze = levels.maze(currentLevel);
+        tileMap = maze.getTileMap();
+        rowCount = maze.getRows();
+        columnCount = maze.getColumns();
+        wallGrid = new TileGrid(rowCount, columnCount, tileSize, COLLISION_PADDING);
+        entities = new SpatialHash(columnCount * tileSize, rowCount * tileSize, 2 * tileSize, 8);
+        freeTiles = new TileSet(rowCount * columnCount);
+        int spawnTileCount = 0;
+        int[] foodTiles = new int[rowCount * columnCount];
+
+        for (int r = 0; r < rowCount; r++) {
+            String row = tileMap[r];
+            for (int c = 0; c < columnCount && c < row.length(); c++) {
+                char tileMapChar = row.charAt(c);
+                int x = c * tileSize;
+                int y = r * tileSize;
+
+                switch (tileMapChar) {
+                    case WALL:
+                        walls.add(new Block(WALL, x, y, tileSize, tileSize));
+                        wallGrid.setWall(r, c);
+                        break;
+                    case BLUE_GHOST:
+                    case ORANGE_GHOST:
+                    case PINK_GHOST:
+                    case RED_GHOST:
+                        entities.insert(ghosts.add(tileMapChar, x, y, ghostBaseSpeed), x, y);
+                        break;
+                    case PACMAN:
+                        pacman = new Block(PACMAN, x, y, tileSize, tileSize);
+                        pacman.direction = 'R';
+                        pacman.speed = pacmanSpeed;
+                        break;
+                    case FOOD:
+                        foods.set(r * columnCount + c);
+                        foodCount++;
+                        foodTiles[spawnTileCount++] = r * columnCount + c;
+                        break;
+                }
+            }
+        }
+
+        spawnTiles = Arrays.copyOf(foodTiles, spawnTileCount);
+
+        ghostRandoms = new Random[ghosts.count];
+        for (int i = 0; i < ghosts.count; i++) {
+            ghostRandoms[i] = new Random(random.nextLong());
+        }
+        resolveGhostStrategies();
+
+        // Distances only depend on the layout, so they are kept until the maze changes
+        if (navigation == null || navigationMaze != maze) {
+            navigation = new NavigationGrid(wallGrid);
+            navigationMaze = maze;
+        }
+
+        // Spawn initial items immediately after loading map
+        spawnInitialItems();
+
+        if (event.shouldCommit()) {
+            event.level = currentLevel;
+            event.rows = rowCount;
+            event.columns = columnCount;
+            event.walls = walls.size();
+            event.ghosts = ghosts.count;
+            event.food = foodCount;
+            event.commit();
+        }
+    }
+
+    private void spawnInitialItems() {
+        GameEvents.SpawnInitialItems event = new GameEvents.SpawnInitialItems();
+        event.begin();
+        int[] emptySpaces = new int[spawnTiles.length];
+        int count = 0;
+
+        // Find all spawn tiles not occupied by pacman or ghosts. Everything still
+        // stands on its start tile here, so a tile mask is enough.
+        BitSet occupied = new BitSet(rowCount * columnCount);
+        if (pacman != null) {
+            occupied.set(tileOf(pacman));
+        }
+        for (int i = 0; i < ghosts.count; i++) {
+            occupied.set(tileAt(ghosts.x[i], ghosts.y[i]));
+        }
+        for (int tile : spawnTiles) {
+            if (!occupied.get(tile)) {
+                emptySpaces[count++] = tile;
+            }
+        }
+
+        int freeTileCount = count;
+
+        // Spawn cherry if we have empty spaces
+        if (count > 0) {
+            int pick = random.nextInt(count);
+            int cherryTile = emptySpaces[pick];
+            emptySpaces[pick] = emptySpaces[--count];
+            cherry = new Block(CHERRY, tileX(cherryTile), tileY(cherryTile), tileSize, tileSize);
+            entities.insert(cherryId(), cherry.x, cherry.y);
+
+            // Spawn power food if we have another empty space
+            if (count > 0) {
+                int powerTile = emptySpaces[random.nextInt(count)];
+                powerFood = new Block(POWER_FOOD, tileX(powerTile) + 8, tileY(powerTile) + 8, POWER_FOOD_SIZE, POWER_FOOD_SIZE);
+                entities.insert(powerFoodId(), powerFood.x, powerFood.y);
+            }
+        }
+
+        if (event.shouldCommit()) {
+            event.level = currentLevel;
+            event.freeTiles = freeTileCount;
+            event.commit();
+        }
+    }
+
+    private void initializeGhosts() {
+        for (int i = 0; i < ghosts.count; i++) {
+            resetGhostPosition(i);
+        }
+    }
+
+    private void resetGhostPosition(int ghost) {
+        ghosts.reset(ghost);
+
+        // Try different directions until we find one that works
+        ArrayList<Character> dirs = new ArrayList<>(Arrays.asList('U', 'D', 'L', 'R'));
+        Collections.shuffle(dirs, random);
+
+        for (char dir : dirs) {
+            ghosts.turn(ghost, dir, wallGrid);
+            if (ghosts.moving[ghost]) break;
+        }
+
+        // Force initial movement
+        ghosts.x[ghost] += ghosts.velocityX[ghost];
+        ghosts.y[ghost] += ghosts.velocityY[ghost];
+        entities.update(ghost, ghosts.x[ghost], ghosts.y[ghost]);
+    }
+
+    public void setPacmanDirection(char direction) {
+        pacman.updateDirection(direction);
+    }
+
+    // Runs up to the given number of ticks, stopping early when the game
+    // leaves the RUNNING state
+    public Status advance(int ticks) {
+        Status result = status;
+        for (int i = 0; i < ticks; i++) {
+            result = tick();
+            if (result != Status.RUNNING) break;
+        }
+        return result;
+    }
+
+    public Status tick() {
+        GameEvents.Tick event = new GameEvents.Tick();
+        event.begin();
+        Status result;
+        if (profiler == null) {
+            result = advance();
+        } else {
+            profiler.beginTick();
+            try {
+                result = advance();
+            } finally {
+                profiler.endTick();
+            }
+        }
+        if (event.shouldCommit()) {
+            event.tick = tickCount;
+            event.level = currentLevel;
+            event.ghosts = ghosts.count;
+            event.food = foodCount;
+            event.status = result.name();
+            event.commit();
+        }
+        return result;
+    }
+
+    private void mark(TickProfiler.Phase phase) {
+        if (profiler != null) {
+            profiler.mark(phase);
+        }
+    }
+
+    private Status advance() {
+        if (status == Status.GAME_OVER || status == Status.GAME_WIN) return status;
+        status = Status.RUNNING;
+        tickCount++;
+
+        // Update power-up timer
+        if (isPoweredUp) {
+            powerUpTimer++;
+            if (powerUpTimer >= POWER_UP_DURATION) {
+                isPoweredUp = false;
+                powerUpTimer = 0;
+                ghosts.setScared(false);
+            }
+        }
+
+        // Spawn cherry periodically
+        cherrySpawnTimer++;
+        if (cherry == null && cherrySpawnTimer > CHERRY_SPAWN_INTERVAL &&
+            random.nextDouble() < 0.015) {
+            spawnCherry();
+            cherrySpawnTimer = 0;
+        }
+
+        // Spawn power food periodically (only if none exists)
+        powerFoodSpawnTimer++;
+        if (powerFood == null && powerFoodSpawnTimer > POWER_FOOD_SPAWN_INTERVAL &&
+            random.nextDouble() < 0.01) {
+            spawnPowerFood();
+            powerFoodSpawnTimer = 0;
+        }
+        mark(TickProfiler.Phase.SPAWN);
+
+        // Move Pac-Man
+        pacman.x += pacman.velocityX;
+        pacman.y += pacman.velocityY;
+
+        // Wall collision for Pac-Man
+        if (hitsWall(pacman)) {
+            pacman.x -= pacman.velocityX;
+            pacman.y -= pacman.velocityY;
+        }
+        pacman.x = wrap(pacman.x, pacman.width, columnCount * tileSize);
+        pacman.y = wrap(pacman.y, pacman.height, rowCount * tileSize);
+        mark(TickProfiler.Phase.PACMAN);
+
+        // Move and handle ghosts. Ghosts change direction periodically or when
+        // stuck; their strategies decide where to (see GhostScheduler).
+        ghostDirectionChangeCounter++;
+        char[] turns = ghostScheduler.decide(this);
+        int ghostCount = ghosts.count;
+        int[] ghostX = ghosts.x, ghostY = ghosts.y;
+        int[] velocityX = ghosts.velocityX, velocityY = ghosts.velocityY;
+        boolean[] frozen = ghosts.frozen, moving = ghosts.moving;
+        for (int i = 0; i < ghostCount; i++) {
+            if (turns[i] != 0 && !frozen[i]) {
+                ghosts.turn(i, turns[i], wallGrid);
+            }
+        }
+        mark(TickProfiler.Phase.GHOST_AI);
+
+        // Move ghosts
+        for (int i = 0; i < ghostCount; i++) {
+            if (!frozen[i]) {
+                ghostX[i] += velocityX[i];
+                ghostY[i] += velocityY[i];
+            }
+        }
+
+        // Check ghost-wall collisions
+        for (int i = 0; i < ghostCount; i++) {
+            if (frozen[i]) continue;
+            if (wallGrid.collidesWithWall(ghostX[i], ghostY[i], ghosts.size, ghosts.size)) {
+                ghostX[i] -= velocityX[i];
+                ghostY[i] -= velocityY[i];
+                moving[i] = false;
+            } else {
+                moving[i] = true;
+            }
+            ghostX[i] = wrap(ghostX[i], ghosts.size, columnCount * tileSize);
+            ghostY[i] = wrap(ghostY[i], ghosts.size, rowCount * tileSize);
+            entities.update(i, ghostX[i], ghostY[i]);
+        }
+        mark(TickProfiler.Phase.GHOSTS);
+
+        // Ghost-pacman collisions, handled in ghost order. Pac-Man stands still
+        // while ghosts move, so testing after they all moved finds the same
+        // ghosts as testing each right after its move; and once one catches
+        // him, resetPositions() puts every ghost back anyway.
+        BitSet near = nearPacman();
+        for (int i = near.nextSetBit(0); i >= 0 && i < ghostCount; i = near.nextSetBit(i + 1)) {
+            if (frozen[i] || !ghostTouches(i, pacman)) {
+                continue;
+            }
+            if (isPoweredUp && ghosts.scared[i]) {
+                ghosts.reset(i);
+                ghosts.scared[i] = false;
+                entities.update(i, ghostX[i], ghostY[i]);
+                addScore(200);
+            } else if (!isPoweredUp) {
+                lives--;
+                if (lives <= 0) {
+                    status = Status.GAME_OVER;
+                    return status;
+                }
+                resetPositions();
+                break;
+            }
+        }
+        mark(TickProfiler.Phase.COLLISIONS);
+
+        // Food collision. A dot sits in the middle of its tile and is smaller
+        // than twice the collision padding, so only the dot in the tile under
+        // Pac-Man's center can ever touch him.
+        int foodTile = centerTile(pacman);
+        if (foodTile >= 0 && foods.get(foodTile) && touchesFood(pacman, foodTile)) {
+            foods.clear(foodTile);
+            foodCount--;
+            addScore(10);
+            releaseTile(foodTile);
+        }
+
+        // Power food and cherry collisions, again only against what is near
+        near = nearPacman();
+        if (powerFood != null && near.get(powerFoodId()) && collision(pacman, powerFood)) {
+            currentScore += 50;
+            isPoweredUp = true;
+            powerUpTimer = 0;
+            ghosts.setScared(true);
+            int tile = tileOf(powerFood);
+            entities.remove(powerFoodId());
+            powerFood = null;
+            releaseTile(tile);
+        }
+        if (cherry != null && near.get(cherryId()) && collision(pacman, cherry)) {
+            currentScore += 100;
+            int tile = tileOf(cherry);
+            entities.remove(cherryId());
+            cherry = null;
+            releaseTile(tile);
+        }
+
+        if (foodCount == 0 && powerFood == null) {
+            if (currentLevel < MAX_LEVEL) {
+                nextLevel();
+                status = Status.LEVEL_CLEARED;
+            } else {
+                status = Status.GAME_WIN;
+            }
+        }
+        mark(TickProfiler.Phase.FOOD);
+        ghostScheduler.tickEnded(this);
+        mark(TickProfiler.Phase.GHOST_AI);
+        return status;
+    }
+
+    private void addScore(int points) {
+        currentScore += points;
+        if (currentScore > highScores.getOrDefault(currentLevel, 0)) {
+            highScores.put(currentLevel, currentScore);
+        }
+    }
+
+    private void spawnCherry() {
+        int tile = takeFreeTile();
+        if (tile >= 0) {
+            cherry = new Block(CHERRY, tileX(tile), tileY(tile), tileSize, tileSize);
+            entities.insert(cherryId(), cherry.x, cherry.y);
+        }
+    }
+
+    private void spawnPowerFood() {
+        int tile = takeFreeTile();
+        if (tile >= 0) {
+            powerFood = new Block(POWER_FOOD, tileX(tile) + 8, tileY(tile) + 8, POWER_FOOD_SIZE, POWER_FOOD_SIZE);
+            entities.insert(powerFoodId(), powerFood.x, powerFood.y);
+        }
+    }
+
+    // Ids of the ghosts and pickups that may touch Pac-Man where he stands now
+    private BitSet nearPacman() {
+        nearby.clear();
+        entities.query(pacman.x, pacman.y, pacman.width, pacman.height, nearby);
+        return nearby;
+    }
+
+    private int cherryId() {
+        return ghosts.count;
+    }
+
+    private int powerFoodId() {
+        return ghosts.count + 1;
+    }
+
+    // Random spawn tile with nothing on it, or -1 if there is none
+    int randomFreeTile() {
+        return freeTiles.random(random);
+    }
+
+    private int takeFreeTile() {
+        int tile = randomFreeTile();
+        if (tile >= 0) {
+            freeTiles.remove(tile);
+        }
+        return tile;
+    }
+
+    // Called when food, a cherry or power food leaves a tile
+    private void releaseTile(int tile) {
+        if (!foods.get(tile) &&
+            (cherry == null || tileOf(cherry) != tile) &&
+            (powerFood == null || tileOf(powerFood) != tile)) {
+            freeTiles.add(tile);
+        }
+    }
+
+    // Same test as collision() against the food dot of a tile
+    private boolean touchesFood(Block block, int tile) {
+        int padding = COLLISION_PADDING;
+        int foodX = tileX(tile) + FOOD_OFFSET;
+        int foodY = tileY(tile) + FOOD_OFFSET;
+        return block.x + padding < foodX + FOOD_SIZE - padding &&
+               block.x + block.width - padding > foodX + padding &&
+               block.y + padding < foodY + FOOD_SIZE - padding &&
+               block.y + block.height - padding > foodY + padding;
+    }
+
+    // Tunnels: an actor whose centre leaves the board through an opening in
+    // its border comes back in on the opposite side (Maze makes sure there is
+    // an opening there too). Keeps every centre on the board.
+    private static int wrap(int position, int size, int boardSize) {
+        int center = position + size / 2;
+        if (center < 0) return position + boardSize;
+        if (center >= boardSize) return position - boardSize;
+        return position;
+    }
+
+    private int tileOf(Block block) {
+        return tileAt(block.x, block.y);
+    }
+
+    private int tileAt(int x, int y) {
+        return (y / tileSize) * columnCount + x / tileSize;
+    }
+
+    private int tileX(int tile) {
+        return (tile % columnCount) * tileSize;
+    }
+
+    private int tileY(int tile) {
+        return (tile / columnCount) * tileSize;
+    }
+
+    private int centerTile(Block block) {
+        return navigation.tileAt(block.x + block.width / 2, block.y + block.height / 2);
+    }
+
+    public boolean collision(Block a, Block b) {
+        return overlaps(a.x, a.y, a.width, a.height, b);
+    }
+
+    // Same test as collision() between a ghost and a block
+    boolean ghostTouches(int ghost, Block block) {
+        return overlaps(ghosts.x[ghost], ghosts.y[ghost], ghosts.size, ghosts.size, block);
+    }
+
+    private boolean overlaps(int x, int y, int width, int height, Block b) {
+        int padding = COLLISION_PADDING;
+        return x + padding < b.x + b.width - padding &&
+               x + width - padding > b.x + padding &&
+               y + padding < b.y + b.height - padding &&
+               y + height - padding > b.y + padding;
+    }
+
+    // Wall check through the tile grid; only the tiles the block overlaps are looked at
+    boolean hitsWall(Block block) {
+        return wallGrid.collidesWithWall(block.x, block.y, block.width, block.height);
+    }
+
+    public void resetPositions() {
+        GameEvents.ResetPositions event = new GameEvents.ResetPositions();
+        event.begin();
+        aiEpoch++;
+        pacman.reset();
+        pacman.velocityX = 0;
+        pacman.velocityY = 0;
+
+        for (int i = 0; i < ghosts.count; i++) {
+            resetGhostPosition(i);
+        }
+
+        isPoweredUp = false;
+        powerUpTimer = 0;
+
+        if (event.shouldCommit()) {
+            event.level = currentLevel;
+            event.lives = lives;
+            event.commit();
+        }
+    }
+
+    public void setGhostScheduling(GhostScheduler.Mode mode) {
+        ghostScheduler.setMode(mode);
+    }
+
+    public GhostScheduler.Mode getGhostScheduling() {
+        return ghostScheduler.getMode();
+    }
+
+    void setProfiler(TickProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    // Replaces the strategy of every ghost of the given colour
+    public void setGhostStrategy(char ghostType, GhostStrategy strategy) {
+        ghostStrategies.put(ghostType, strategy);
+        resolveGhostStrategies();
+        aiEpoch++;
+    }
+
+    private void resolveGhostStrategies() {
+        ghostStrategyOf = new GhostStrategy[ghosts.count];
+        for (int i = 0; i < ghosts.count; i++) {
+            ghostStrategyOf[i] = ghostStrategies.computeIfAbsent(ghosts.type[i], GhostStrategy::forType);
+        }
+    }
+
+    int getAiEpoch() {
+        return aiEpoch;
+    }
+
+    // Copies what the ghost AI needs into the snapshot and returns how many
+    // ghosts are due for a decision. ticksAhead is 1 when the decisions are for
+    // the tick after the next one to run.
+    int captureGhosts(GhostSnapshot snapshot, int ticksAhead) {
+        snapshot.navigation = navigation;
+        snapshot.walls = wallGrid;
+        snapshot.chaseRange = ghostChaseRange;
+        snapshot.chaseProbability = ghostChaseProbability;
+        snapshot.pacmanX = pacman.x;
+        snapshot.pacmanY = pacman.y;
+        snapshot.pacmanWidth = pacman.width;
+        snapshot.pacmanHeight = pacman.height;
+        snapshot.pacmanSpeed = pacman.speed;
+        snapshot.pacmanDirection = pacman.direction;
+
+        boolean turnTick = (ghostDirectionChangeCounter + ticksAhead) % GHOST_DIRECTION_CHANGE_INTERVAL == 0;
+        int count = ghosts.count;
+        snapshot.resize(count);
+        System.arraycopy(ghosts.type, 0, snapshot.type, 0, count);
+        System.arraycopy(ghosts.x, 0, snapshot.x, 0, count);
+        System.arraycopy(ghosts.y, 0, snapshot.y, 0, count);
+        System.arraycopy(ghosts.speed, 0, snapshot.speed, 0, count);
+        System.arraycopy(ghosts.scared, 0, snapshot.scared, 0, count);
+        System.arraycopy(ghostStrategyOf, 0, snapshot.strategy, 0, count);
+        System.arraycopy(ghostRandoms, 0, snapshot.random, 0, count);
+        Arrays.fill(snapshot.width, 0, count, ghosts.size);
+        Arrays.fill(snapshot.height, 0, count, ghosts.size);
+
+        int dueCount = 0;
+        byte[] direction = ghosts.direction;
+        boolean[] frozen = ghosts.frozen, moving = ghosts.moving;
+        for (int i = 0; i < count; i++) {
+            snapshot.direction[i] = ActorStore.DIRECTIONS[direction[i]];
+            boolean due = !frozen[i] && (turnTick || !moving[i]);
+            snapshot.due[i] = due;
+            if (due) dueCount++;
+        }
+        return dueCount;
+    }
+
+    // Seeds the high score of a level, e.g. from a saved leaderboard
+    public void setHighScore(int level, int score) {
+        highScores.merge(level, score, Math::max);
+    }
+
+    // Hash of everything the rules depend on, to check that a replayed game
+    // ended in exactly the same state as the recorded one
+    public long stateHash() {
+        long hash = status.ordinal();
+        hash = hash * 31 + currentLevel;
+        hash = hash * 31 + currentScore;
+        hash = hash * 31 + lives;
+        hash = hash * 31 + (isPoweredUp ? powerUpTimer + 1 : 0);
+        hash = hash * 31 + cherrySpawnTimer;
+        hash = hash * 31 + powerFoodSpawnTimer;
+        hash = hash * 31 + ghostDirectionChangeCounter;
+        hash = hash * 31 + foods.hashCode();
+        hash = hash * 31 + blockHash(pacman);
+        for (int i = 0; i < ghosts.count; i++) {
+            hash = hash * 31 + actorHash(ghosts, i);
+        }
+        hash = hash * 31 + blockHash(cherry);
+        hash = hash * 31 + blockHash(powerFood);
+        return hash;
+    }
+
+    private static long blockHash(Block block) {
+        if (block == null) {
+            return 0;
+        }
+        long hash = block.x;
+        hash = hash * 31 + block.y;
+        hash = hash * 31 + block.direction;
+        hash = hash * 31 + block.velocityX;
+        hash = hash * 31 + block.velocityY;
+        hash = hash * 31 + (block.isScared ? 1 : 0);
+        hash = hash * 31 + (block.isFrozen ? 2 : 0);
+        return hash;
+    }
+
+    // Same as blockHash() for an actor of the store
+    private static long actorHash(ActorStore actors, int i) {
+        long hash = actors.x[i];
+        hash = hash * 31 + actors.y[i];
+        hash = hash * 31 + actors.directionOf(i);
+        hash = hash * 31 + actors.velocityX[i];
+        hash = hash * 31 + actors.velocityY[i];
+        hash = hash * 31 + (actors.scared[i] ? 1 : 0);
+        hash = hash * 31 + (actors.frozen[i] ? 2 : 0);
+        return hash;
+    }
+
+    public Status getStatus() { return status; }
+    public long getTickCount() { return tickCount; }
+    public int getMapVersion() { return mapVersion; }
+    public int getScore() { return currentScore; }
+    public int getLives() { return lives; }
+    public int getCurrentLevel() { return currentLevel; }
+    public int getMaxLevel() { return MAX_LEVEL; }
+    public int getHighScore(int level) { return highScores.getOrDefault(level, 0); }
+    public boolean isPoweredUp() { return isPoweredUp; }
+    public int getPowerUpTicksLeft() { return isPoweredUp ? POWER_UP_DURATION - powerUpTimer : 0; }
+    public int getRowCount() { return rowCount; }
+    public int getColumnCount() { return columnCount; }
+    // Size of the largest maze of any level
+    public int getMaxRowCount() { return levels.maxRows(); }
+    public int getMaxColumnCount() { return levels.maxColumns(); }
+    public int getTileSize() { return tileSize; }
+    public Collection<Block> getWalls() { return walls; }
+    public boolean isWall(int row, int col) { return wallGrid.isWall(row, col); }
+    // Tiles that still have food; iterate with nextSetBit
+    public BitSet getFoodTiles() { return foods; }
+    public int getFoodCount() { return foodCount; }
+    ActorStore getGhosts() { return ghosts; }
+    public Block getPacman() { return pacman; }
+    public Block getCherry() { return cherry; }
+    public Block getPowerFood() { return powerFood; }
+}
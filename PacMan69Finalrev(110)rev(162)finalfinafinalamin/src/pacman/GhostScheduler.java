@@ -0,0 +1,120 @@
+package pacman;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Works out the ghosts' next directions from a GhostSnapshot.
+//
+//   INLINE     on the game thread, one ghost after the other
+//   PARALLEL   every due ghost on its own worker task, joined before moving;
+//              gives exactly the same game as INLINE
+//   PIPELINED  the decisions for the next tick are computed on a worker while
+//              the caller renders, from the state at the end of this tick;
+//              ghosts react one tick late, but the game thread never waits
+//              for the AI unless the worker is still busy
+//
+// Every ghost draws from its own Random, so all three are deterministic.
+// The worker modes pay a thread hand-off on every tick where a ghost turns,
+// which is nothing next to a 16 ms frame but dominates headless runs such as
+// BatchRunner, so those should stay INLINE.
+class GhostScheduler {
+    enum Mode { INLINE, PARALLEL, PIPELINED }
+
+    // The worker modes use their own few daemon threads, started on first
+    // use. The common pool is shared with image and music decoding, and with
+    // fewer than three cores CompletableFuture's default executor starts a
+    // new thread per task.
+    private static class Workers {
+        static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "ghost-ai-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private Mode mode = Mode.INLINE;
+    private final GhostSnapshot snapshot = new GhostSnapshot();
+    private char[] decisions = new char[0];
+
+    // Pipelined decisions for the next tick and the world epoch they were made in
+    private CompletableFuture<char[]> pending;
+    private int pendingEpoch;
+
+    Mode getMode() {
+        return mode;
+    }
+
+    void setMode(Mode mode) {
+        discardPending();
+        this.mode = mode;
+    }
+
+    // New directions for this tick, indexed like the ghost list; 0 means the
+    // ghost keeps its direction
+    char[] decide(GameWorld world) {
+        if (pending != null) {
+            char[] ready = pending.join();
+            pending = null;
+            if (pendingEpoch == world.getAiEpoch()) {
+                return ready;
+            }
+        }
+        int due = world.captureGhosts(snapshot, 0);
+        if (mode == Mode.PARALLEL && due > 1) {
+            return decideParallel();
+        }
+        return decideAll();
+    }
+
+    // Called once a tick is done; starts on the next tick's decisions. Most
+    // ticks have no ghost due, and those are answered without a worker.
+    void tickEnded(GameWorld world) {
+        if (mode != Mode.PIPELINED) return;
+        int due = world.captureGhosts(snapshot, 1);
+        pendingEpoch = world.getAiEpoch();
+        pending = due == 0 ? CompletableFuture.completedFuture(decideAll())
+            : CompletableFuture.supplyAsync(this::decideAll, Workers.POOL);
+    }
+
+    void discardPending() {
+        if (pending != null) {
+            pending.join();
+            pending = null;
+        }
+    }
+
+    private char[] decideAll() {
+        char[] result = decisionArray();
+        for (int i = 0; i < snapshot.ghostCount; i++) {
+            result[i] = snapshot.due[i] ? snapshot.strategy[i].decide(snapshot, i, snapshot.random[i]) : 0;
+        }
+        return result;
+    }
+
+    private char[] decideParallel() {
+        char[] result = decisionArray();
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[snapshot.ghostCount];
+        for (int i = 0; i < snapshot.ghostCount; i++) {
+            final int ghost = i;
+            result[ghost] = 0;
+            tasks[ghost] = !snapshot.due[ghost] ? CompletableFuture.completedFuture(null) :
+                CompletableFuture.runAsync(() -> result[ghost] =
+                    snapshot.strategy[ghost].decide(snapshot, ghost, snapshot.random[ghost]), Workers.POOL);
+        }
+        CompletableFuture.allOf(tasks).join();
+        return result;
+    }
+
+    private char[] decisionArray() {
+        if (decisions.length != snapshot.ghostCount) {
+            decisions = new char[snapshot.ghostCount];
+        }
+        return decisions;
+    }
+}
@@ -0,0 +1,184 @@
+package pacman;
+
+import java.util.Random;
+
+// Copy of everything the ghost AI looks at, taken by GameWorld between ghost
+// moves. Strategies read only this copy, never the live blocks, so their
+// decisions can be computed on another thread while the world moves on.
+class GhostSnapshot {
+    static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+
+    NavigationGrid navigation;
+    TileGrid walls;
+    int chaseRange;
+    double chaseProbability;
+
+    int pacmanX, pacmanY, pacmanWidth, pacmanHeight, pacmanSpeed;
+    char pacmanDirection;
+
+    int ghostCount;
+    char[] type = new char[0];
+    int[] x = new int[0], y = new int[0], width = new int[0], height = new int[0], speed = new int[0];
+    char[] direction = new char[0];
+    boolean[] scared = new boolean[0];
+    // Ghosts that pick a new direction this tick, with what they use to pick it
+    boolean[] due = new boolean[0];
+    GhostStrategy[] strategy = new GhostStrategy[0];
+    Random[] random = new Random[0];
+
+    void resize(int count) {
+        ghostCount = count;
+        if (type.length == count) return;
+        type = new char[count];
+        x = new int[count];
+        y = new int[count];
+        width = new int[count];
+        height = new int[count];
+        speed = new int[count];
+        direction = new char[count];
+        scared = new boolean[count];
+        due = new boolean[count];
+        strategy = new GhostStrategy[count];
+        random = new Random[count];
+    }
+
+    boolean withinChaseRange(int ghost) {
+        long dx = x[ghost] - pacmanX;
+        long dy = y[ghost] - pacmanY;
+        return dx * dx + dy * dy < (long) chaseRange * chaseRange;
+    }
+
+    char randomDirection(Random random) {
+        return DIRECTIONS[random.nextInt(4)];
+    }
+
+    // Shortest path towards Pac-Man, or straight at him when there is none
+    char chaseDirection(int ghost) {
+        char pathDirection = pathDirection(ghost, centerTile(pacmanX, pacmanY, pacmanWidth, pacmanHeight));
+        if (pathDirection != 0) {
+            return pathDirection;
+        }
+        return directionTowards(ghost, pacmanX, pacmanY);
+    }
+
+    // Shortest path to where Pac-Man will be in a few steps
+    char interceptDirection(int ghost) {
+        int predictSteps = 5;
+        int futureX = pacmanX;
+        int futureY = pacmanY;
+
+        switch (pacmanDirection) {
+            case 'U': futureY -= predictSteps * pacmanSpeed; break;
+            case 'D': futureY += predictSteps * pacmanSpeed; break;
+            case 'L': futureX -= predictSteps * pacmanSpeed; break;
+            case 'R': futureX += predictSteps * pacmanSpeed; break;
+        }
+
+        // Follow the shortest path to the predicted tile, or to Pac-Man himself
+        // when the prediction lands in a wall
+        int futureTile = centerTile(futureX, futureY, pacmanWidth, pacmanHeight);
+        if (!navigation.isOpen(futureTile)) {
+            futureTile = centerTile(pacmanX, pacmanY, pacmanWidth, pacmanHeight);
+        }
+        char pathDirection = pathDirection(ghost, futureTile);
+        if (pathDirection != 0) {
+            return pathDirection;
+        }
+        return directionTowards(ghost, futureX, futureY);
+    }
+
+    // Shortest path to the point mirroring the nearest other hunting ghost
+    // through Pac-Man; chases him instead when there is no such ghost or the
+    // point is not an open tile
+    char flankDirection(int ghost) {
+        int partner = -1;
+        long partnerDistance = Long.MAX_VALUE;
+        for (int i = 0; i < ghostCount; i++) {
+            if (i == ghost || scared[i]) continue;
+            long dx = x[i] - pacmanX;
+            long dy = y[i] - pacmanY;
+            if (dx * dx + dy * dy < partnerDistance) {
+                partner = i;
+                partnerDistance = dx * dx + dy * dy;
+            }
+        }
+        if (partner < 0) {
+            return chaseDirection(ghost);
+        }
+
+        int targetTile = centerTile(2 * pacmanX - x[partner], 2 * pacmanY - y[partner], pacmanWidth, pacmanHeight);
+        char pathDirection = navigation.isOpen(targetTile) ? pathDirection(ghost, targetTile) : 0;
+        return pathDirection != 0 ? pathDirection : chaseDirection(ghost);
+    }
+
+    // First open direction away from Pac-Man, falling back to two random ones;
+    // keeps the current direction when none of them is open
+    char escapeDirection(int ghost, Random random) {
+        int dx = pacmanX - x[ghost];
+        int dy = pacmanY - y[ghost];
+
+        char[] possibleDirs = {
+            dx > 0 ? 'L' : 'R', // Opposite X direction
+            dy > 0 ? 'U' : 'D',  // Opposite Y direction
+            randomDirection(random), // Random direction as fallback
+            randomDirection(random)  // Another random direction
+        };
+
+        for (char dir : possibleDirs) {
+            if (canMove(ghost, dir)) {
+                return dir;
+            }
+        }
+        return direction[ghost];
+    }
+
+    private char directionTowards(int ghost, int targetX, int targetY) {
+        int dx = targetX - x[ghost];
+        int dy = targetY - y[ghost];
+
+        if (Math.abs(dx) > Math.abs(dy)) {
+            return dx > 0 ? 'R' : 'L';
+        } else {
+            return dy > 0 ? 'D' : 'U';
+        }
+    }
+
+    // Best direction the ghost can take right now along the shortest path to the
+    // target tile, preferring its current direction on ties; 0 if none
+    private char pathDirection(int ghost, int targetTile) {
+        int ghostTile = centerTile(x[ghost], y[ghost], width[ghost], height[ghost]);
+        if (!navigation.isOpen(ghostTile) || !navigation.isOpen(targetTile)) {
+            return 0;
+        }
+
+        char best = 0;
+        int bestDistance = NavigationGrid.UNREACHABLE;
+        for (char dir : DIRECTIONS) {
+            int next = navigation.neighbour(ghostTile, dir);
+            int distance = navigation.distance(next, targetTile);
+            boolean better = distance < bestDistance ||
+                (distance == bestDistance && distance != NavigationGrid.UNREACHABLE && dir == direction[ghost]);
+            if (better && canMove(ghost, dir)) {
+                best = dir;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private int centerTile(int blockX, int blockY, int blockWidth, int blockHeight) {
+        return navigation.tileAt(blockX + blockWidth / 2, blockY + blockHeight / 2);
+    }
+
+    // Whether one step in the given direction stays clear of walls
+    private boolean canMove(int ghost, char dir) {
+        int dx = 0, dy = 0;
+        switch (dir) {
+            case 'U': dy = -speed[ghost]; break;
+            case 'D': dy = speed[ghost]; break;
+            case 'L': dx = -speed[ghost]; break;
+            case 'R': dx = speed[ghost]; break;
+        }
+        return !walls.collidesWithWall(x[ghost] + dx, y[ghost] + dy, width[ghost], height[ghost]);
+    }
+}
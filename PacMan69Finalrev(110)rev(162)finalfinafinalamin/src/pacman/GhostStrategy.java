@@ -0,0 +1,98 @@
+package pacman;
+
+import java.util.Random;
+
+// How one kind of ghost picks its next direction. A strategy only reads the
+// snapshot and the ghost's own Random, so it must keep no state of its own:
+// the scheduler may call it from a worker thread, for several ghosts at once.
+interface GhostStrategy {
+    char decide(GhostSnapshot world, int ghost, Random random);
+
+    // The strategy each ghost colour from the map starts with
+    static GhostStrategy forType(char type) {
+        switch (type) {
+            case GameWorld.PINK_GHOST: return new Hunter(true);
+            case GameWorld.BLUE_GHOST: return new Flanker();
+            case GameWorld.ORANGE_GHOST: return new Shy();
+            default: return new Hunter(false);
+        }
+    }
+
+    // Runs away when scared. Near Pac-Man it mostly takes its first choice,
+    // sometimes wanders and otherwise takes its second; far away it wanders.
+    // Red chases first and then cuts him off, pink does it the other way round.
+    class Hunter implements GhostStrategy {
+        private final boolean interceptFirst;
+
+        Hunter(boolean interceptFirst) {
+            this.interceptFirst = interceptFirst;
+        }
+
+        @Override
+        public char decide(GhostSnapshot world, int ghost, Random random) {
+            if (world.scared[ghost]) {
+                return world.escapeDirection(ghost, random);
+            }
+            if (!world.withinChaseRange(ghost)) {
+                return world.randomDirection(random);
+            }
+
+            double chaseRand = random.nextDouble();
+            if (chaseRand < world.chaseProbability) {
+                return firstChoice(world, ghost);
+            } else if (chaseRand < world.chaseProbability + 0.1) {
+                return world.randomDirection(random);
+            } else {
+                return secondChoice(world, ghost);
+            }
+        }
+
+        char firstChoice(GhostSnapshot world, int ghost) {
+            return interceptFirst ? world.interceptDirection(ghost) : world.chaseDirection(ghost);
+        }
+
+        char secondChoice(GhostSnapshot world, int ghost) {
+            return interceptFirst ? world.chaseDirection(ghost) : world.interceptDirection(ghost);
+        }
+    }
+
+    // Blue works with another ghost: it mostly heads for the far side of
+    // Pac-Man from the nearest other ghost, so the two close in from both
+    // sides, and otherwise chases him
+    class Flanker extends Hunter {
+        Flanker() {
+            super(false);
+        }
+
+        @Override
+        char firstChoice(GhostSnapshot world, int ghost) {
+            return world.flankDirection(ghost);
+        }
+
+        @Override
+        char secondChoice(GhostSnapshot world, int ghost) {
+            return world.chaseDirection(ghost);
+        }
+    }
+
+    // Hunts like red, but loses its nerve within a couple of tiles of Pac-Man
+    // and wanders off instead
+    class Shy extends Hunter {
+        private static final int NERVE_TILES = 2;
+
+        Shy() {
+            super(false);
+        }
+
+        @Override
+        public char decide(GhostSnapshot world, int ghost, Random random) {
+            int tileSize = world.walls.getTileSize();
+            int dx = Math.abs(world.x[ghost] - world.pacmanX);
+            int dy = Math.abs(world.y[ghost] - world.pacmanY);
+            if (!world.scared[ghost] && dx + dy < NERVE_TILES * tileSize) {
+                return world.randomDirection(random);
+            }
+            return super.decide(world, ghost, random);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package pacman;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Durable top-N leaderboard per level, kept across restarts.
+//
+// Every submitted score is appended to a journal (scores.log). A small index
+// file (scores.idx) holds the current top-N of every level and is memory
+// mapped, so startup only reads that one mapping. The journal is compacted
+// down to the entries still in some top-N once it grows past a limit.
+//
+// submit() only updates the in-memory tables and queues the record; a
+// background thread does the disk writes, so the game loop never waits on I/O.
+class HighScoreStore {
+    static final int TOP_N = 10;
+
+    private static final int INDEX_MAGIC = 0x504D4853; // "PMHS"
+    private static final int INDEX_VERSION = 1;
+    // magic, version, levels, topN, journal bytes already folded into the index
+    private static final int INDEX_HEADER_BYTES = 4 * 4 + 8;
+    // level, score, time
+    private static final int RECORD_BYTES = 4 + 4 + 8;
+    private static final int COMPACT_AFTER_RECORDS = 4096;
+
+    // A score on its way to disk
+    private static class Entry {
+        final int level;
+        final int score;
+        final long time;
+
+        Entry(int level, int score, long time) {
+            this.level = level;
+            this.score = score;
+            this.time = time;
+        }
+    }
+
+    private static final Entry CLOSE = new Entry(0, 0, 0);
+
+    private final int levels;
+    // Sorted highest first; only the first counts[level] entries are valid
+    private final int[][] topScores;
+    private final int[] counts;
+
+    private final Path journalFile;
+    private final Path indexFile;
+    private FileChannel journal;
+    private MappedByteBuffer index;
+    private long journalRecords;
+
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+
+    // Opens (or creates) the store in the given directory. If the files can't
+    // be used the store still works, but only in memory.
+    HighScoreStore(Path directory, int levels) {
+        this.levels = levels;
+        this.topScores = new int[levels + 1][TOP_N];
+        this.counts = new int[levels + 1];
+        this.journalFile = directory.resolve("scores.log");
+        this.indexFile = directory.resolve("scores.idx");
+
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            System.out.println("Error opening high scores, they will not be saved: " + e.getMessage());
+            closeFiles();
+        }
+
+        flusher = new Thread(this::flush, "score-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    // Directory from -Dpacman.scores.dir, or ~/.pacman
+    static Path defaultDirectory() {
+        String dir = System.getProperty("pacman.scores.dir");
+        return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".pacman");
+    }
+
+    synchronized int best(int level) {
+        return level >= 1 && level <= levels && counts[level] > 0 ? topScores[level][0] : 0;
+    }
+
+    synchronized int[] top(int level) {
+        return Arrays.copyOf(topScores[level], counts[level]);
+    }
+
+    // Non-blocking; scores that don't make the top N are dropped right here
+    void submit(int level, int score) {
+        if (level < 1 || level > levels || score <= 0) return;
+        synchronized (this) {
+            if (!insert(level, score)) return;
+        }
+        pending.offer(new Entry(level, score, System.currentTimeMillis()));
+    }
+
+    // Writes out everything submitted so far and stops the flusher
+    void close() {
+        if (!flusher.isAlive()) return;
+        pending.offer(CLOSE);
+        try {
+            flusher.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean insert(int level, int score) {
+        int[] top = topScores[level];
+        int count = counts[level];
+        if (count == TOP_N && score <= top[TOP_N - 1]) {
+            return false;
+        }
+        int i = Math.min(count, TOP_N - 1);
+        while (i > 0 && top[i - 1] < score) {
+            top[i] = top[i - 1];
+            i--;
+        }
+        top[i] = score;
+        counts[level] = Math.min(count + 1, TOP_N);
+        return true;
+    }
+
+    private void open() throws IOException {
+        journal = FileChannel.open(journalFile,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journalRecords = journal.size() / RECORD_BYTES;
+
+        long indexBytes = INDEX_HEADER_BYTES + (long) levels * 4 * (1 + TOP_N);
+        boolean fresh = !Files.exists(indexFile) || Files.size(indexFile) != indexBytes;
+        try (FileChannel channel = FileChannel.open(indexFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            index = channel.map(FileChannel.MapMode.READ_WRITE, 0, indexBytes);
+        }
+
+        long folded = 0;
+        if (!fresh && index.getInt(0) == INDEX_MAGIC && index.getInt(4) == INDEX_VERSION
+                && index.getInt(8) == levels && index.getInt(12) == TOP_N) {
+            folded = Math.min(index.getLong(16), journalRecords * RECORD_BYTES);
+            for (int level = 1; level <= levels; level++) {
+                int offset = levelOffset(level);
+                counts[level] = Math.min(index.getInt(offset), TOP_N);
+                for (int i = 0; i < counts[level]; i++) {
+                    topScores[level][i] = index.getInt(offset + 4 + i * 4);
+                }
+            }
+        }
+
+        // Journal records written after the index was last updated (a crash
+        // between the two writes, or a new or damaged index)
+        if (folded < journalRecords * RECORD_BYTES) {
+            ByteBuffer records = readJournal(folded, journalRecords * RECORD_BYTES);
+            while (records.remaining() >= RECORD_BYTES) {
+                int level = records.getInt();
+                int score = records.getInt();
+                records.getLong();
+                if (level >= 1 && level <= levels) {
+                    insert(level, score);
+                }
+            }
+        }
+        journal.position(journalRecords * RECORD_BYTES);
+        writeIndex(snapshot());
+    }
+
+    private void flush() {
+        List<Entry> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch);
+            closing = batch.remove(CLOSE);
+            if (journal == null || batch.isEmpty()) {
+                batch.clear();
+                continue;
+            }
+
+            try {
+                ByteBuffer records = ByteBuffer.allocate(batch.size() * RECORD_BYTES);
+                for (Entry entry : batch) {
+                    records.putInt(entry.level).putInt(entry.score).putLong(entry.time);
+                }
+                records.flip();
+                while (records.hasRemaining()) {
+                    journal.write(records);
+                }
+                journal.force(false);
+                journalRecords += batch.size();
+
+                int[][] tables = snapshot();
+                if (journalRecords > COMPACT_AFTER_RECORDS) {
+                    compact(tables);
+                }
+                writeIndex(tables);
+            } catch (IOException e) {
+                System.out.println("Error saving high scores: " + e.getMessage());
+            }
+            batch.clear();
+        }
+        closeFiles();
+    }
+
+    // Copy of the top tables, with the count of each level in slot 0
+    private synchronized int[][] snapshot() {
+        int[][] tables = new int[levels + 1][];
+        for (int level = 1; level <= levels; level++) {
+            tables[level] = new int[1 + counts[level]];
+            tables[level][0] = counts[level];
+            System.arraycopy(topScores[level], 0, tables[level], 1, counts[level]);
+        }
+        return tables;
+    }
+
+    private void writeIndex(int[][] tables) throws IOException {
+        if (index == null) return;
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(8, levels);
+        index.putInt(12, TOP_N);
+        index.putLong(16, journal.position());
+        for (int level = 1; level <= levels; level++) {
+            int offset = levelOffset(level);
+            for (int i = 0; i < tables[level].length; i++) {
+                index.putInt(offset + i * 4, tables[level][i]);
+            }
+        }
+        index.force();
+    }
+
+    // Journal bytes from..to; a single read may return fewer bytes than asked
+    private ByteBuffer readJournal(long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (journal.read(buffer, from + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Rewrites the journal with only the entries that are still in a top N,
+    // each with the time it was first recorded. Of equal scores the earliest
+    // ones are kept, as insert() does.
+    private void compact(int[][] tables) throws IOException {
+        Path temp = journalFile.resolveSibling("scores.log.tmp");
+        // How many times each (level, score) is still wanted
+        Map<Long, Integer> wanted = new HashMap<>();
+        for (int level = 1; level <= levels; level++) {
+            for (int i = 1; i < tables[level].length; i++) {
+                wanted.merge(recordKey(level, tables[level][i]), 1, Integer::sum);
+            }
+        }
+
+        int records = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(levels * TOP_N * RECORD_BYTES);
+        ByteBuffer journalBytes = readJournal(0, journalRecords * RECORD_BYTES);
+        while (journalBytes.remaining() >= RECORD_BYTES) {
+            int level = journalBytes.getInt();
+            int score = journalBytes.getInt();
+            long time = journalBytes.getLong();
+            Long key = recordKey(level, score);
+            Integer count = wanted.get(key);
+            if (count != null) {
+                if (count == 1) wanted.remove(key); else wanted.put(key, count - 1);
+                buffer.putInt(level).putInt(score).putLong(time);
+                records++;
+            }
+        }
+        // Scores only the index still knew about; their time is unknown (0)
+        for (Map.Entry<Long, Integer> entry : wanted.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                buffer.putInt((int) (entry.getKey() >>> 32)).putInt((int) (long) entry.getKey()).putLong(0);
+                records++;
+            }
+        }
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+
+        journal.close();
+        Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal.position(journal.size());
+        journalRecords = records;
+    }
+
+    private static long recordKey(int level, int score) {
+        return (long) level << 32 | (score & 0xFFFFFFFFL);
+    }
+
+    private int levelOffset(int level) {
+        return INDEX_HEADER_BYTES + (level - 1) * 4 * (1 + TOP_N);
+    }
+
+    private void closeFiles() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Error closing high scores: " + e.getMessage());
+            }
+        }
+        journal = null;
+        index = null;
+    }
+}
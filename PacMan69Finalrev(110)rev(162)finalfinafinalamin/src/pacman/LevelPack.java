@@ -0,0 +1,113 @@
+package pacman;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+// The mazes of all levels, in order. The standard pack is read once from
+// -Dpacman.levels.dir when it is set, otherwise from the levels bundled with
+// the game (pacman/levels). Levels are level1, level2, ... up to the first
+// missing number, each as .pmz or .maze. A pack that fails to load is
+// reported and replaced by the built-in maze, so the game always starts.
+class LevelPack {
+    static final int DEFAULT_LEVELS = 3;
+    private static final String RESOURCE_DIR = "/pacman/levels/";
+
+    private static volatile LevelPack standard;
+
+    private final List<Maze> mazes;
+
+    LevelPack(List<Maze> mazes) {
+        if (mazes.isEmpty()) {
+            throw new IllegalArgumentException("Level pack has no levels");
+        }
+        this.mazes = new ArrayList<>(mazes);
+    }
+
+    // The same maze for each of the given number of levels
+    static LevelPack repeat(Maze maze, int levels) {
+        return new LevelPack(Collections.nCopies(levels, maze));
+    }
+
+    static LevelPack standard() {
+        LevelPack pack = standard;
+        if (pack == null) {
+            synchronized (LevelPack.class) {
+                pack = standard;
+                if (pack == null) {
+                    pack = loadStandard();
+                    standard = pack;
+                }
+            }
+        }
+        return pack;
+    }
+
+    private static LevelPack loadStandard() {
+        String dir = System.getProperty("pacman.levels.dir");
+        try {
+            List<Maze> mazes = dir != null ? loadDirectory(Paths.get(dir)) : loadResources();
+            if (!mazes.isEmpty()) {
+                return new LevelPack(mazes);
+            }
+            System.out.println("No levels found in " + (dir != null ? dir : RESOURCE_DIR) + ", using the default maze");
+        } catch (IOException e) {
+            System.out.println("Error loading levels, using the default maze: " + e.getMessage());
+        }
+        return repeat(new Maze(GameWorld.DEFAULT_TILE_MAP), DEFAULT_LEVELS);
+    }
+
+    static List<Maze> loadDirectory(Path dir) throws IOException {
+        List<Maze> mazes = new ArrayList<>();
+        for (int level = 1; ; level++) {
+            Path binary = dir.resolve("level" + level + Maze.BINARY_EXTENSION);
+            Path text = dir.resolve("level" + level + Maze.TEXT_EXTENSION);
+            if (Files.exists(binary)) {
+                mazes.add(Maze.load(binary));
+            } else if (Files.exists(text)) {
+                mazes.add(Maze.load(text));
+            } else {
+                return mazes;
+            }
+        }
+    }
+
+    private static List<Maze> loadResources() throws IOException {
+        List<Maze> mazes = new ArrayList<>();
+        for (int level = 1; ; level++) {
+            Maze maze = Maze.loadResource(RESOURCE_DIR + "level" + level + Maze.BINARY_EXTENSION);
+            if (maze == null) {
+                maze = Maze.loadResource(RESOURCE_DIR + "level" + level + Maze.TEXT_EXTENSION);
+            }
+            if (maze == null) {
+                return mazes;
+            }
+            mazes.add(maze);
+        }
+    }
+
+    int size() {
+        return mazes.size();
+    }
+
+    // Maze of a level, counting from 1; levels past the end reuse the last maze
+    Maze maze(int level) {
+        return mazes.get(Math.max(0, Math.min(level, mazes.size()) - 1));
+    }
+
+    int maxRows() {
+        int rows = 0;
+        for (Maze maze : mazes) {
+            rows = Math.max(rows, maze.getRows());
+        }
+        return rows;
+    }
+
+    int maxColumns() {
+        int columns = 0;
+        for (Maze maze : mazes) {
+            columns = Math.max(columns, maze.getColumns());
+        }
+        return columns;
+    }
+}
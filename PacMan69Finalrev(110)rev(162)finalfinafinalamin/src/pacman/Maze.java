@@ -0,0 +1,392 @@
+package pacman;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// One level's layout, plus optional difficulty settings that replace the
+// level's preset. Mazes are validated when built, so GameWorld can trust them.
+//
+// Text format (.maze): the rows of the map, one per line, using the GameWorld
+// tile characters (X wall, space food, O empty/tunnel, P Pac-Man, r b p o
+// ghosts). Lines starting with ';' are comments. Settings are lines such as
+// "@pacman-speed 5"; the keys are pacman-speed, ghost-speed,
+// chase-probability and chase-range (in tiles).
+//
+// Tiles in the border that are not walls are tunnels: actors leaving the
+// board there come back in on the opposite side, so each one needs an open
+// tile facing it across the maze (same row for the left and right edges,
+// same column for the top and bottom).
+//
+// Binary format (.pmz), big-endian:
+//   int MAGIC, short VERSION, int rows, int columns,
+//   byte pacman speed, byte ghost speed, double chase probability,
+//   short chase range (each -1 when not set),
+//   varint spawn count, then per spawn a varint tile index and its character,
+//   then the terrain as runs: varint (run length << 2 | terrain), with terrain
+//   0 wall, 1 food, 2 empty. Spawn tiles are stored as empty terrain.
+//
+// Convert between the two with:
+//   java -cp PacMan.jar pacman.Maze <in.maze|in.pmz> <out.maze|out.pmz>
+class Maze {
+    static final String TEXT_EXTENSION = ".maze";
+    static final String BINARY_EXTENSION = ".pmz";
+
+    private static final int MAGIC = 0x504D5A31; // "PMZ1"
+    private static final short VERSION = 1;
+    // Keeps the per-tile tables of a world within a few tens of megabytes
+    private static final int MAX_TILES = 2048 * 2048;
+    private static final char[] TERRAIN = {GameWorld.WALL, GameWorld.FOOD, GameWorld.TUNNEL};
+    // Largest settings the binary format can hold (a byte per speed, a short
+    // for the chase range); text mazes are held to the same limits
+    private static final int MAX_SPEED = Byte.MAX_VALUE;
+    private static final int MAX_CHASE_RANGE = Short.MAX_VALUE;
+
+    private final String[] rows;
+    private final int columns;
+    // Difficulty settings; -1 means use the level preset
+    int pacmanSpeed = -1;
+    int ghostSpeed = -1;
+    double chaseProbability = -1;
+    int chaseRangeTiles = -1;
+
+    Maze(String[] rows) {
+        this(checkTiles(rows), rows[0].length());
+    }
+
+    // For rows that are already known to be valid
+    private Maze(String[] rows, int columns) {
+        this.rows = rows.clone();
+        this.columns = columns;
+    }
+
+    private static String[] checkTiles(String[] rows) {
+        if (rows.length == 0 || rows[0].isEmpty()) {
+            throw new IllegalArgumentException("Maze is empty");
+        }
+        int columns = rows[0].length();
+        checkSize(rows.length, columns);
+
+        int pacmen = 0;
+        int food = 0;
+        for (int r = 0; r < rows.length; r++) {
+            String row = rows[r];
+            if (row.length() != columns) {
+                throw new IllegalArgumentException("Row " + (r + 1) + " is " + row.length()
+                    + " tiles wide, expected " + columns);
+            }
+            for (int c = 0; c < columns; c++) {
+                char tile = row.charAt(c);
+                if (tile == GameWorld.FOOD) {
+                    food++;
+                } else if (tile == GameWorld.PACMAN) {
+                    pacmen++;
+                } else if (tile != GameWorld.WALL && tile != GameWorld.TUNNEL && !isGhost(tile)) {
+                    throw new IllegalArgumentException("Unknown tile '" + tile
+                        + "' at row " + (r + 1) + ", column " + (c + 1));
+                }
+            }
+        }
+        checkCounts(pacmen, food);
+        checkTunnels(rows);
+        return rows;
+    }
+
+    private static void checkSize(int rows, int columns) {
+        if (rows <= 0 || columns <= 0 || (long) rows * columns > MAX_TILES) {
+            throw new IllegalArgumentException("Bad maze size " + columns + "x" + rows);
+        }
+    }
+
+    private static void checkTunnels(String[] rows) {
+        int columns = rows[0].length();
+        String top = rows[0];
+        String bottom = rows[rows.length - 1];
+        for (int r = 0; r < rows.length; r++) {
+            if ((rows[r].charAt(0) == GameWorld.WALL) != (rows[r].charAt(columns - 1) == GameWorld.WALL)) {
+                throw new IllegalArgumentException("Tunnel in row " + (r + 1) + " has no exit on the other side");
+            }
+        }
+        for (int c = 0; c < columns; c++) {
+            if ((top.charAt(c) == GameWorld.WALL) != (bottom.charAt(c) == GameWorld.WALL)) {
+                throw new IllegalArgumentException("Tunnel in column " + (c + 1) + " has no exit on the other side");
+            }
+        }
+    }
+
+    private static void checkCounts(int pacmen, long food) {
+        if (pacmen != 1) {
+            throw new IllegalArgumentException("Maze needs exactly one Pac-Man, found " + pacmen);
+        }
+        if (food == 0) {
+            throw new IllegalArgumentException("Maze has no food");
+        }
+    }
+
+    private static boolean isGhost(char tile) {
+        return tile == GameWorld.RED_GHOST || tile == GameWorld.BLUE_GHOST ||
+               tile == GameWorld.PINK_GHOST || tile == GameWorld.ORANGE_GHOST;
+    }
+
+    int getRows() {
+        return rows.length;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    String[] getTileMap() {
+        return rows;
+    }
+
+    // Loads a .maze or .pmz file; binary files are memory-mapped
+    static Maze load(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(BINARY_EXTENSION)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return readBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), name);
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readText(reader, name);
+        }
+    }
+
+    // Loads a bundled maze, or returns null if there is no such resource
+    static Maze loadResource(String resource) throws IOException {
+        try (InputStream in = Maze.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                return null;
+            }
+            if (resource.endsWith(BINARY_EXTENSION)) {
+                return readBinary(ByteBuffer.wrap(in.readAllBytes()), resource);
+            }
+            return readText(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), resource);
+        }
+    }
+
+    static Maze readText(BufferedReader reader, String source) throws IOException {
+        List<String> rows = new ArrayList<>();
+        Map<String, String> settings = new HashMap<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.startsWith(";")) continue;
+            if (line.startsWith("@")) {
+                String[] parts = line.substring(1).trim().split("\\s+", 2);
+                if (parts.length != 2) {
+                    throw new IOException(source + " line " + lineNumber + ": setting without a value");
+                }
+                settings.put(parts[0], parts[1]);
+                continue;
+            }
+            rows.add(line);
+        }
+        // Editors like to leave empty lines at the end
+        while (!rows.isEmpty() && rows.get(rows.size() - 1).isEmpty()) {
+            rows.remove(rows.size() - 1);
+        }
+
+        try {
+            Maze maze = new Maze(rows.toArray(new String[0]));
+            for (Map.Entry<String, String> setting : settings.entrySet()) {
+                String value = setting.getValue();
+                switch (setting.getKey()) {
+                    case "pacman-speed": maze.pacmanSpeed = Integer.parseInt(value); break;
+                    case "ghost-speed": maze.ghostSpeed = Integer.parseInt(value); break;
+                    case "chase-probability": maze.chaseProbability = Double.parseDouble(value); break;
+                    case "chase-range": maze.chaseRangeTiles = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown setting @" + setting.getKey());
+                }
+            }
+            maze.checkSettings();
+            return maze;
+        } catch (IllegalArgumentException e) {
+            throw new IOException(source + ": " + e.getMessage(), e);
+        }
+    }
+
+    static Maze readBinary(ByteBuffer in, String source) throws IOException {
+        try {
+            in.order(ByteOrder.BIG_ENDIAN);
+            if (in.getInt() != MAGIC) {
+                throw new IOException(source + ": not a maze file");
+            }
+            short version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException(source + ": unsupported maze version " + version);
+            }
+            int rowCount = in.getInt();
+            int columnCount = in.getInt();
+            checkSize(rowCount, columnCount);
+            int pacmanSpeed = in.get();
+            int ghostSpeed = in.get();
+            double chaseProbability = in.getDouble();
+            int chaseRange = in.getShort();
+
+            char[] tiles = new char[rowCount * columnCount];
+            // Varints are checked as longs: a corrupt one can be any 64-bit value.
+            // There is at most one spawn per tile.
+            long spawns = Varints.read(in);
+            if (spawns < 0 || spawns > tiles.length) {
+                throw new IOException(source + ": corrupt spawn count " + Long.toUnsignedString(spawns));
+            }
+            int spawnCount = (int) spawns;
+            int[] spawnTiles = new int[spawnCount];
+            char[] spawnTypes = new char[spawnCount];
+            for (int i = 0; i < spawnCount; i++) {
+                long tile = Varints.read(in);
+                if (tile < 0 || tile >= tiles.length) {
+                    throw new IOException(source + ": spawn outside the maze");
+                }
+                spawnTiles[i] = (int) tile;
+                spawnTypes[i] = (char) (in.get() & 0xFF);
+            }
+
+            // Runs and spawns are checked as they are decoded, so unlike text the
+            // tiles don't need a second pass
+            int filled = 0;
+            long food = 0;
+            while (filled < tiles.length) {
+                long run = Varints.read(in);
+                int terrain = (int) (run & 3);
+                long length = run >>> 2;
+                if (terrain >= TERRAIN.length || length == 0 || length > tiles.length - filled) {
+                    throw new IOException(source + ": corrupt terrain run at tile " + filled);
+                }
+                Arrays.fill(tiles, filled, filled + (int) length, TERRAIN[terrain]);
+                filled += (int) length;
+                if (TERRAIN[terrain] == GameWorld.FOOD) food += length;
+            }
+            int pacmen = 0;
+            for (int i = 0; i < spawnCount; i++) {
+                char type = spawnTypes[i];
+                if (type != GameWorld.PACMAN && !isGhost(type)) {
+                    throw new IOException(source + ": unknown spawn '" + type + "'");
+                }
+                if (tiles[spawnTiles[i]] != GameWorld.TUNNEL) {
+                    throw new IOException(source + ": spawn on a wall, food or another spawn");
+                }
+                tiles[spawnTiles[i]] = type;
+                if (type == GameWorld.PACMAN) pacmen++;
+            }
+            checkCounts(pacmen, food);
+
+            String[] rows = new String[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                rows[r] = new String(tiles, r * columnCount, columnCount);
+            }
+            checkTunnels(rows);
+            Maze maze = new Maze(rows, columnCount);
+            maze.pacmanSpeed = pacmanSpeed;
+            maze.ghostSpeed = ghostSpeed;
+            maze.chaseProbability = chaseProbability < 0 ? -1 : chaseProbability;
+            maze.chaseRangeTiles = chaseRange;
+            maze.checkSettings();
+            return maze;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(source + ": maze file is truncated", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(source + ": " + e.getMessage(), e);
+        }
+    }
+
+    void writeText(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (pacmanSpeed >= 0) out.write("@pacman-speed " + pacmanSpeed + "\n");
+            if (ghostSpeed >= 0) out.write("@ghost-speed " + ghostSpeed + "\n");
+            if (chaseProbability >= 0) out.write("@chase-probability " + chaseProbability + "\n");
+            if (chaseRangeTiles >= 0) out.write("@chase-range " + chaseRangeTiles + "\n");
+            for (String row : rows) {
+                out.write(row);
+                out.write('\n');
+            }
+        }
+    }
+
+    void writeBinary(Path file) throws IOException {
+        ByteArrayOutputStream spawns = new ByteArrayOutputStream();
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        int spawnCount = 0;
+        int runTerrain = -1;
+        long runLength = 0;
+        for (int r = 0; r < rows.length; r++) {
+            for (int c = 0; c < columns; c++) {
+                char tile = rows[r].charAt(c);
+                int terrain;
+                switch (tile) {
+                    case GameWorld.WALL: terrain = 0; break;
+                    case GameWorld.FOOD: terrain = 1; break;
+                    case GameWorld.TUNNEL: terrain = 2; break;
+                    default:
+                        terrain = 2;
+                        Varints.write(spawns, (long) r * columns + c);
+                        spawns.write(tile);
+                        spawnCount++;
+                }
+                if (terrain != runTerrain && runLength > 0) {
+                    Varints.write(runs, runLength << 2 | runTerrain);
+                    runLength = 0;
+                }
+                runTerrain = terrain;
+                runLength++;
+            }
+        }
+        Varints.write(runs, runLength << 2 | runTerrain);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(rows.length);
+            out.writeInt(columns);
+            out.writeByte(pacmanSpeed);
+            out.writeByte(ghostSpeed);
+            out.writeDouble(chaseProbability);
+            out.writeShort(chaseRangeTiles);
+            ByteArrayOutputStream count = new ByteArrayOutputStream();
+            Varints.write(count, spawnCount);
+            count.writeTo(out);
+            spawns.writeTo(out);
+            runs.writeTo(out);
+        }
+    }
+
+    private void checkSettings() {
+        if (pacmanSpeed == 0 || pacmanSpeed < -1 || ghostSpeed == 0 || ghostSpeed < -1) {
+            throw new IllegalArgumentException("Speeds must be positive");
+        }
+        if (pacmanSpeed > MAX_SPEED || ghostSpeed > MAX_SPEED) {
+            throw new IllegalArgumentException("Speeds must be at most " + MAX_SPEED);
+        }
+        if (chaseProbability > 1 || (chaseProbability < 0 && chaseProbability != -1)) {
+            throw new IllegalArgumentException("Chase probability must be between 0 and 1");
+        }
+        if (chaseRangeTiles < -1) {
+            throw new IllegalArgumentException("Chase range must not be negative");
+        }
+        if (chaseRangeTiles > MAX_CHASE_RANGE) {
+            throw new IllegalArgumentException("Chase range must be at most " + MAX_CHASE_RANGE + " tiles");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: Maze <in.maze|in.pmz> <out.maze|out.pmz>");
+            return;
+        }
+        Maze maze = load(Paths.get(args[0]));
+        Path out = Paths.get(args[1]);
+        if (out.getFileName().toString().endsWith(BINARY_EXTENSION)) {
+            maze.writeBinary(out);
+        } else {
+            maze.writeText(out);
+        }
+        System.out.printf("Wrote %s (%dx%d, %d bytes)%n", out, maze.columns, maze.rows.length, Files.size(out));
+    }
+}
@@ -0,0 +1,160 @@
+package pacman;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Shortest-path distances between open tiles, from a breadth-first search over
+// the wall grid. Steps off an edge of the maze come back in on the other side,
+// like actors going through a tunnel.
+// Normal sized mazes keep an all-pairs table filled as the game goes: each
+// target tile gets one distance field, searched the first time it is asked
+// for, and after that a ghost decision is a plain array lookup. On larger
+// mazes a full field per target would cost a whole-maze search whenever
+// Pac-Man enters a new tile, so each thread instead keeps one search from the
+// latest target and takes it only as far as the tiles asked about. Ghosts only
+// look for paths near Pac-Man, so that stays a small part of the maze. Both
+// give the same distances.
+class NavigationGrid {
+    static final int UNREACHABLE = Short.MAX_VALUE;
+
+    // Mazes with at most this many tiles keep the full all-pairs table
+    private static final int ALL_PAIRS_LIMIT = 2048;
+
+    private final TileGrid grid;
+    private final int rows;
+    private final int columns;
+    private final AtomicReferenceArray<short[]> allPairs;
+    private final ThreadLocal<PartialSearch> partialSearch;
+
+    NavigationGrid(TileGrid grid) {
+        this.grid = grid;
+        this.rows = grid.getRows();
+        this.columns = grid.getColumns();
+
+        if (rows * columns <= ALL_PAIRS_LIMIT) {
+            allPairs = new AtomicReferenceArray<>(rows * columns);
+            partialSearch = null;
+        } else {
+            allPairs = null;
+            partialSearch = ThreadLocal.withInitial(PartialSearch::new);
+        }
+    }
+
+    // Tile index under a pixel position, or -1 outside the maze
+    int tileAt(int pixelX, int pixelY) {
+        int tileSize = grid.getTileSize();
+        int row = Math.floorDiv(pixelY, tileSize);
+        int col = Math.floorDiv(pixelX, tileSize);
+        if (row < 0 || row >= rows || col < 0 || col >= columns) {
+            return -1;
+        }
+        return row * columns + col;
+    }
+
+    boolean isOpen(int tile) {
+        return tile >= 0 && !grid.isWall(tile / columns, tile % columns);
+    }
+
+    // Tile reached by one step in the given direction
+    int neighbour(int tile, char direction) {
+        int row = tile / columns;
+        int col = tile % columns;
+        switch (direction) {
+            case 'U': row = row > 0 ? row - 1 : rows - 1; break;
+            case 'D': row = row < rows - 1 ? row + 1 : 0; break;
+            case 'L': col = col > 0 ? col - 1 : columns - 1; break;
+            case 'R': col = col < columns - 1 ? col + 1 : 0; break;
+        }
+        return row * columns + col;
+    }
+
+    // Number of steps between two tiles, or UNREACHABLE
+    int distance(int fromTile, int toTile) {
+        if (!isOpen(fromTile) || !isOpen(toTile)) {
+            return UNREACHABLE;
+        }
+        if (allPairs == null) {
+            return partialSearch.get().distance(fromTile, toTile);
+        }
+        short[] field = allPairs.get(toTile);
+        if (field == null) {
+            // Two threads may both search the same field; either result is fine
+            field = search(toTile);
+            allPairs.set(toTile, field);
+        }
+        return field[fromTile];
+    }
+
+    private short[] search(int target) {
+        short[] distances = new short[rows * columns];
+        Arrays.fill(distances, (short) UNREACHABLE);
+        int[] queue = new int[rows * columns];
+        int head = 0, tail = 0;
+
+        distances[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int tile = queue[head++];
+            int row = tile / columns;
+            int col = tile % columns;
+            short next = (short) Math.min(distances[tile] + 1, UNREACHABLE - 1);
+            tail = visit(distances, queue, tail, row > 0 ? tile - columns : tile + (rows - 1) * columns, next);
+            tail = visit(distances, queue, tail, row < rows - 1 ? tile + columns : col, next);
+            tail = visit(distances, queue, tail, col > 0 ? tile - 1 : tile + columns - 1, next);
+            tail = visit(distances, queue, tail, col < columns - 1 ? tile + 1 : tile - (columns - 1), next);
+        }
+        return distances;
+    }
+
+    private int visit(short[] distances, int[] queue, int tail, int tile, short distance) {
+        if (distances[tile] == UNREACHABLE && !grid.isWall(tile / columns, tile % columns)) {
+            distances[tile] = distance;
+            queue[tail++] = tile;
+        }
+        return tail;
+    }
+
+    // The same search, from one target at a time, run only until the tile
+    // asked about is reached. It carries on from there while the target stays
+    // the same. A tile's distance is only valid while its mark is the current
+    // generation, so starting over is O(1).
+    private final class PartialSearch {
+        private final int[] mark = new int[rows * columns];
+        private final short[] distances = new short[rows * columns];
+        private final int[] queue = new int[rows * columns];
+        private int generation;
+        private int target = -1;
+        private int head, tail;
+
+        int distance(int fromTile, int toTile) {
+            if (toTile != target) {
+                if (++generation == 0) {
+                    Arrays.fill(mark, 0);
+                    generation = 1;
+                }
+                target = toTile;
+                head = tail = 0;
+                reach(toTile, (short) 0);
+            }
+            while (mark[fromTile] != generation && head < tail) {
+                int tile = queue[head++];
+                int row = tile / columns;
+                int col = tile % columns;
+                short next = (short) Math.min(distances[tile] + 1, UNREACHABLE - 1);
+                reach(row > 0 ? tile - columns : tile + (rows - 1) * columns, next);
+                reach(row < rows - 1 ? tile + columns : col, next);
+                reach(col > 0 ? tile - 1 : tile + columns - 1, next);
+                reach(col < columns - 1 ? tile + 1 : tile - (columns - 1), next);
+            }
+            return mark[fromTile] == generation ? distances[fromTile] : UNREACHABLE;
+        }
+
+        private void reach(int tile, short distance) {
+            if (mark[tile] != generation && !grid.isWall(tile / columns, tile % columns)) {
+                mark[tile] = generation;
+                distances[tile] = distance;
+                queue[tail++] = tile;
+            }
+        }
+    }
+}
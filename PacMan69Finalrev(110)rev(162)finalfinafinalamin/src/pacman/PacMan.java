@@ -3,12 +3,17 @@ package pacman;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.*;
-import java.io.*;
-import javazoom.jl.player.Player;
-import javazoom.jl.decoder.JavaLayerException;
-
-public class PacMan extends JPanel implements ActionListener, KeyListener {
+import java.awt.image.BufferedImage;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class PacMan extends JPanel implements KeyListener {
     // Game states
     public enum GameState {
         MAIN_MENU, LEVEL_SELECT, PLAYING, GAME_OVER, GAME_WIN, PAUSED, LEVEL_INFO
@@ -17,513 +22,372 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     private GameState gameState = GameState.MAIN_MENU;
     private int selectedMenuOption = 0;
     private int selectedLevelOption = 0;
-    private int currentLevel = 1;
-    private final int MAX_LEVEL = 3;
     private int levelInfoTimer = 0;
     private final int LEVEL_INFO_DURATION = 60;
     
-    // Game elements
-    private Map<Integer, Integer> highScores = new HashMap<>();
-    private int currentScore = 0;
-    private int lives = 3;
+    // Game rules and state live in the world; this panel renders it
+    private final GameWorld world = new GameWorld();
+    // Ghost AI runs on the game thread unless -Dpacman.ghost.scheduling=parallel|pipelined
+    private static final String GHOST_SCHEDULING = System.getProperty("pacman.ghost.scheduling", "inline");
+
+    // Replay recording, on when started with -Dpacman.replay.dir=<directory>
+    private static final String REPLAY_DIR = System.getProperty("pacman.replay.dir");
+    private final ReplayWriter replayWriter = REPLAY_DIR != null ? new ReplayWriter(Paths.get(REPLAY_DIR)) : null;
+    private ReplayRecorder replay;
+
+    // Leaderboard kept on disk across restarts; see -Dpacman.scores.dir
+    private final HighScoreStore scores = new HighScoreStore(HighScoreStore.defaultDirectory(), world.getMaxLevel());
     
     // Menu options
     private final String[] MAIN_MENU_OPTIONS = {"Start Game", "Level Select", "Quit"};
-    private final String[] LEVEL_OPTIONS = {"Level 1 - Easy", "Level 2 - Medium", "Level 3 - Hard", "Back"};
+    private final String[] LEVEL_OPTIONS = levelOptions(world.getMaxLevel());
     private final String[] GAME_OVER_OPTIONS = {"Restart", "Main Menu", "Quit"};
     private final String[] GAME_WIN_OPTIONS = {"Next Level", "Main Menu", "Quit"};
     private final String[] PAUSE_OPTIONS = {"Resume", "Restart", "Main Menu", "Quit"};
     
-    class Block {
-        int x, y, width, height;
-        Image image;
-        Color color;
-        int startX, startY;
-        char direction = 'U';
-        int velocityX = 0, velocityY = 0;
-        int speed;
-        boolean moving = true;
-        boolean isScared = false;
-        boolean isFrozen = false;
-
-        Block(Image image, Color color, int x, int y, int width, int height) {
-            this.image = image;
-            this.color = color;
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-            this.startX = x;
-            this.startY = y;
-        }
-
-        void updateDirection(char direction) {
-            char prevDirection = this.direction;
-            this.direction = direction;
-            updateVelocity();
-            
-            // Test movement
-            int oldX = x, oldY = y;
-            x += velocityX;
-            y += velocityY;
-            
-            boolean canMove = true;
-            for (Block wall : walls) {
-                if (collision(this, wall)) {
-                    canMove = false;
-                    break;
-                }
-            }
-            
-            if (!canMove) {
-                x = oldX;
-                y = oldY;
-                this.direction = prevDirection;
-                updateVelocity();
-                this.moving = false;
-            } else {
-                this.moving = true;
-                x = oldX;
-                y = oldY;
-            }
-        }
-
-        void updateVelocity() {
-            if (isFrozen) {
-                this.velocityX = 0;
-                this.velocityY = 0;
-                return;
-            }
-            
-            int effectiveSpeed = this.speed;
-            if (this == pacman && isPoweredUp) {
-                effectiveSpeed += 1;
-            }
-            
-            switch (this.direction) {
-                case 'U': velocityX = 0; velocityY = -effectiveSpeed; break;
-                case 'D': velocityX = 0; velocityY = effectiveSpeed; break;
-                case 'L': velocityX = -effectiveSpeed; velocityY = 0; break;
-                case 'R': velocityX = effectiveSpeed; velocityY = 0; break;
-            }
-        }
-
-        void reset() {
-            this.x = this.startX;
-            this.y = this.startY;
-            this.direction = 'R';
-            this.moving = true;
-            this.isScared = false;
-            this.isFrozen = false;
-            updateVelocity();
-        }
-    }
-
-    // Game board dimensions
-    private final int rowCount = 21;
-    private final int columnCount = 19;
-    private final int tileSize = 32;
-    private final int boardWidth = columnCount * tileSize;
-    private final int boardHeight = rowCount * tileSize;
-
-    // Game difficulty variables
-    private int pacmanSpeed = 4;
-    private int ghostBaseSpeed = 2;
-    private int ghostChaseRange = 5 * tileSize;
-    private double ghostChaseProbability = 0.7;
-    private int ghostDirectionChangeCounter = 0;
-    private final int GHOST_DIRECTION_CHANGE_INTERVAL = 30;
-    
-    // Power-up variables
-    private boolean isPoweredUp = false;
-    private int powerUpTimer = 0;
-    private final int POWER_UP_DURATION = 300;
-    
-    // Spawn timers
-    private int cherrySpawnTimer = 0;
-    private int powerFoodSpawnTimer = 0;
-    private final int CHERRY_SPAWN_INTERVAL = 500;
-    private final int POWER_FOOD_SPAWN_INTERVAL = 800;
-    
-    // Images
-    private Image scaredGhostImage;
-    private Image powerFoodImage;
-    private Image wallImage;
-    private Image cherryImage;
-    private Image blueGhostImage;
-    private Image orangeGhostImage;
-    private Image pinkGhostImage;
-    private Image redGhostImage;
-    private Image heartImage;
+    // Game board dimensions: the window shows up to MAX_VIEW_COLUMNS x
+    // MAX_VIEW_ROWS tiles, and the camera scrolls over larger mazes
+    private static final int MAX_VIEW_COLUMNS = 28;
+    private static final int MAX_VIEW_ROWS = 24;
+    private final int tileSize = world.getTileSize();
+    private final int boardWidth = Math.min(world.getMaxColumnCount(), MAX_VIEW_COLUMNS) * tileSize;
+    private final int boardHeight = Math.min(world.getMaxRowCount(), MAX_VIEW_ROWS) * tileSize;
+    private final Camera camera = new Camera(boardWidth, boardHeight);
+
+    // Sprites load in the background (see AssetLoader); until the atlas is
+    // ready the game draws placeholder shapes
+    private static final int HEART_SIZE = 25;
+    private final CompletableFuture<SpriteAtlas> assets;
+    private SpriteAtlas sprites;
+    private final PacManFrames pacmanFrames = new PacManFrames(tileSize, AssetLoader.screenConfiguration());
     private Color wallColor = new Color(0, 0, 255);
 
-    // Animation
+    // Fonts, colors and HUD labels are created once and reused by every frame
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 48);
+    private static final Font HEADING_FONT = new Font("Arial", Font.BOLD, 36);
+    private static final Font MENU_FONT = new Font("Arial", Font.BOLD, 32);
+    private static final Font LEVEL_MENU_FONT = new Font("Arial", Font.BOLD, 28);
+    private static final Font SUBTITLE_FONT = new Font("Arial", Font.BOLD, 24);
+    private static final Font HUD_FONT = new Font("Arial", Font.BOLD, 20);
+    private static final Font INFO_FONT = new Font("Arial", Font.PLAIN, 24);
+    private static final Font HINT_FONT = new Font("Arial", Font.PLAIN, 18);
+    private static final Color OVERLAY_COLOR = new Color(0, 0, 0, 180);
+    private final NumberLabel scoreLabel = new NumberLabel("Score: ");
+    private final NumberLabel highLabel = new NumberLabel("High: ");
+    private final NumberLabel highScoreLabel = new NumberLabel("High Score: ");
+    private final NumberLabel levelLabel = new NumberLabel("Level: ");
+    private final NumberLabel levelTitleLabel = new NumberLabel("LEVEL ");
+    private final NumberLabel powerLabel = new NumberLabel("Power: ", "s");
+
+    // Walls never change after loadMap(), so they are drawn once into this
+    // layer and the visible part is blitted in a single call; rebuilt when the
+    // map version changes. Mazes over WALL_LAYER_MAX_PIXELS would need too big
+    // an image and draw their visible wall tiles one by one instead.
+    private static final int WALL_LAYER_MAX_PIXELS = 2048 * 2048;
+    private BufferedImage wallLayer;
+    private int wallLayerVersion = -1;
+
+    // Animation, advanced by update ticks rather than by repaints
     private int pacmanSpriteNum = 1;
     private int pacmanSpriteCounter = 0;
     private final int PACMAN_ANIMATION_SPEED = 6;
+
+    // What the renderer draws: the state after the latest update or input.
+    // The game loop fills and publishes snapshots, the thread that paints
+    // (the EDT, or the game loop itself when rendering actively) takes the
+    // newest one; the three snapshots are reused for the whole game.
+    // published is the last one handed out, for the game loop only.
+    private final TripleBuffer<FrameSnapshot> frames = new TripleBuffer<>(FrameSnapshot::new);
+    private FrameSnapshot published;
     
     // Sound
-    private PlayerThread mainMenuPlayer;
-    private PlayerThread inGamePlayer;
-    private BufferedInputStream mainMenuStream;
-    private BufferedInputStream inGameStream;
+    private static final String MAIN_MENU_MUSIC = "/pacman/backsoundMain.mp3";
+    private static final String IN_GAME_MUSIC = "/pacman/backsoundingame.mp3";
+    private final AudioMixer audio;
+
+    // Frame timings; F3 shows them over the game, see TickProfiler for the file dump
+    private final TickProfiler profiler = new TickProfiler();
+    private volatile boolean showProfiler = false;
+    private static final Font PROFILER_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    // First overlay line, in the column layout of the profiler's summary
+    private static final String RENDER_FLIPPING = "render       active, page flipping";
+    private static final String RENDER_BLITTING = "render       active, blitting";
+    private static final String RENDER_SWING = "render       Swing repaints";
     
-    // Movement
-    private javax.swing.Timer gameLoop;
-    char[] directions = {'U', 'D', 'L', 'R'};
-    Random random = new Random();
+    // Game loop: the world, the game state and the menus belong to one
+    // thread that updates at a fixed TICKS_PER_SECOND. Keys pressed on the EDT
+    // reach it through a queue. Repaints run on the EDT on their own timer at
+    // -Dpacman.render.fps (default 60) and draw the latest snapshot. With
+    // -Dpacman.render=active the game loop instead draws and shows every
+    // snapshot itself through an ActiveRenderer, right after publishing it.
+    private static final long UPDATE_INTERVAL = 1_000_000_000L / GameWorld.TICKS_PER_SECOND;
+    private static final int MAX_CATCH_UP_STEPS = 5;
+    private static final int RENDER_FPS = Math.max(1, Integer.getInteger("pacman.render.fps", 60));
+    private static final boolean ACTIVE_RENDERING =
+        "active".equalsIgnoreCase(System.getProperty("pacman.render")) && !GraphicsEnvironment.isHeadless();
+    private final ConcurrentLinkedQueue<Integer> pendingKeys = new ConcurrentLinkedQueue<>();
+    private final Thread gameLoop = new Thread(this::runGameLoop, "game-loop");
+    private javax.swing.Timer renderLoop;
+    private ActiveRenderer activeRenderer;
+
+    // Key to screen latency: when the oldest key not yet handled was pressed
+    // (0 if none), and the sequence of the last snapshot that reached the screen
+    private final AtomicLong keyPressedAt = new AtomicLong();
+    private volatile long shownSequence;
 
-    // Fixed tileMap with consistent row lengths
-    private final String[] tileMap = {
-        "XXXXXXXXXXXXXXXXXXX",
-        "X        X        X",
-        "X XX XXX X XXX XX X",
-        "X                 X",
-        "X XX X XXXXX X XX X",
-        "X    X       X    X",
-        "XXXX XXXX XXXX XXXX",
-        "X    X       X    X",
-        "XXXX X XXrXX X XXXX",
-        "X       bpo       X",
-        "XXXX X XXXXX X XXXX",
-        "X    X       X    X",
-        "XXXX X XXXXX X XXXX",
-        "X        X        X",
-        "X XX XXX X XXX XX X",
-        "X  X     P     X  X",
-        "XX X X XXXXX X X XX",
-        "X    X   X   X    X",
-        "X XXXXXX X XXXXXX X",
-        "X                 X",
-        "XXXXXXXXXXXXXXXXXXX"
-    };
-
-    // Game objects
-    HashSet<Block> walls = new HashSet<>();
-    HashSet<Block> foods = new HashSet<>();
-    HashSet<Block> ghosts = new HashSet<>();
-    Block pacman;
-    Block cherry;
-    Block powerFood;
+    public PacMan() {
+        setPreferredSize(new Dimension(boardWidth, boardHeight));
+        setBackground(Color.BLACK);
+        addKeyListener(this);
+        setFocusable(true);
 
-    class PlayerThread extends Thread {
-        private Player player;
-        private boolean loop;
-        private String filename;
-        private volatile boolean running = true;
-        private BufferedInputStream stream;
+        for (int level = 1; level <= world.getMaxLevel(); level++) {
+            world.setHighScore(level, scores.best(level));
+        }
+        world.setGhostScheduling(GhostScheduler.Mode.valueOf(GHOST_SCHEDULING.toUpperCase()));
+        world.setProfiler(profiler);
+        audio = new AudioMixer(profiler);
 
-        public PlayerThread(String filename, boolean loop) {
-            this.filename = filename;
-            this.loop = loop;
+        // Load images while the main menu shows
+        Map<SpriteAtlas.Sprite, Integer> spriteSizes = new EnumMap<>(SpriteAtlas.Sprite.class);
+        for (SpriteAtlas.Sprite sprite : SpriteAtlas.Sprite.values()) {
+            spriteSizes.put(sprite, tileSize);
         }
+        spriteSizes.put(SpriteAtlas.Sprite.POWER_FOOD, GameWorld.POWER_FOOD_SIZE);
+        spriteSizes.put(SpriteAtlas.Sprite.HEART, HEART_SIZE);
+        assets = AssetLoader.load(spriteSizes);
 
-        public void run() {
-            try {
-                do {
-                    InputStream is = getClass().getResourceAsStream(filename);
-                    if (is == null) {
-                        System.out.println("Could not find music file: " + filename);
-                        break;
-                    }
-                    stream = new BufferedInputStream(is);
-                    player = new Player(stream);
-                    player.play();
-                    if (!loop) break;
-                } while (running);
-            } catch (Exception e) {
-                System.out.println("Error playing music: " + e.getMessage());
-            }
+        // Start main menu music and decode the in-game track meanwhile
+        playMainMenuMusic();
+        audio.preload(IN_GAME_MUSIC);
+
+        publishFrame(0);
+        if (ACTIVE_RENDERING) {
+            activeRenderer = new ActiveRenderer(boardWidth, boardHeight);
+            setLayout(new BorderLayout());
+            add(activeRenderer.canvas());
+        } else {
+            renderLoop = new javax.swing.Timer(1000 / RENDER_FPS, e -> repaint());
+            renderLoop.start();
         }
+        gameLoop.setDaemon(true);
+        gameLoop.start();
+    }
 
-        public void stopMusic() {
-            running = false;
-            if (player != null) {
-                player.close();
-            }
+    // Fixed-timestep loop: handles queued keys as soon as they arrive, runs
+    // the updates that are due (catching up at most MAX_CATCH_UP_STEPS after
+    // a stall, then dropping the backlog) and publishes a snapshot whenever
+    // anything on screen changed, showing it at once when rendering actively.
+    // The profiler overlay is live, so it is redrawn every update while shown.
+    // Parks until the next update or key. An exception is reported and the
+    // loop goes on from the next update, as the Swing timer it replaced did.
+    private void runGameLoop() {
+        long nextUpdate = System.nanoTime();
+        while (true) {
             try {
-                if (stream != null) {
-                    stream.close();
-                }
-            } catch (IOException e) {
-                System.out.println("Error closing stream: " + e.getMessage());
+                nextUpdate = runPendingWork(nextUpdate);
+            } catch (RuntimeException e) {
+                System.out.println("Error in game loop: " + e);
+                e.printStackTrace(System.out);
+                nextUpdate = System.nanoTime() + UPDATE_INTERVAL;
+            }
+            long sleep = nextUpdate - System.nanoTime();
+            if (sleep > 0 && pendingKeys.isEmpty()) {
+                LockSupport.parkNanos(this, sleep);
             }
         }
     }
 
-    public PacMan() {
-        setPreferredSize(new Dimension(boardWidth, boardHeight));
-        setBackground(Color.BLACK);
-        addKeyListener(this);
-        setFocusable(true);
+    // One pass of the loop: keys, due updates, publishing. Returns when the
+    // next update is due.
+    private long runPendingWork(long nextUpdate) {
+        boolean changed = false;
+        Integer code;
+        while ((code = pendingKeys.poll()) != null) {
+            handleKey(code);
+            changed = true;
+        }
+        long inputAt = keyPressedAt.getAndSet(0);
 
-        // Initialize high scores
-        for (int i = 1; i <= MAX_LEVEL; i++) {
-            highScores.put(i, 0);
+        long now = System.nanoTime();
+        int steps = 0;
+        while (now - nextUpdate >= 0 && steps < MAX_CATCH_UP_STEPS) {
+            profiler.frame();
+            move();
+            animate();
+            nextUpdate += UPDATE_INTERVAL;
+            steps++;
+        }
+        if (now - nextUpdate >= 0) {
+            // Too far behind to catch up; continue from now
+            nextUpdate = now + UPDATE_INTERVAL;
         }
 
-        // Load images
-        try {
-            blueGhostImage = new ImageIcon(getClass().getResource("/pacman/blueGhost.png")).getImage();
-            orangeGhostImage = new ImageIcon(getClass().getResource("/pacman/orangeGhost.png")).getImage();
-            pinkGhostImage = new ImageIcon(getClass().getResource("/pacman/pinkGhost.png")).getImage();
-            redGhostImage = new ImageIcon(getClass().getResource("/pacman/redGhost.png")).getImage();
-            heartImage = new ImageIcon(getClass().getResource("/pacman/heart.png")).getImage();
-            scaredGhostImage = new ImageIcon(getClass().getResource("/pacman/scaredGhost.png")).getImage();
-            powerFoodImage = new ImageIcon(getClass().getResource("/pacman/powerFood.png")).getImage();
-            wallImage = new ImageIcon(getClass().getResource("/pacman/wall.png")).getImage();
-            cherryImage = new ImageIcon(getClass().getResource("/pacman/cherry.png")).getImage();
-        } catch (Exception e) {
-            System.out.println("Error loading images: " + e.getMessage());
+        boolean published = (changed || steps > 0) && publishFrame(inputAt);
+        if (activeRenderer != null && (published || changed || (showProfiler && steps > 0))) {
+            present();
         }
+        return nextUpdate;
+    }
 
-        setLevelDifficulty(currentLevel);
-        loadMap();
-        initializeGhosts();
-        
-        gameLoop = new javax.swing.Timer(16, this);
-        gameLoop.start();
-        
-        // Start main menu music
-        playMainMenuMusic();
+    private void playMainMenuMusic() {
+        audio.play(MAIN_MENU_MUSIC);
     }
 
-    private void setLevelDifficulty(int level) {
-        currentLevel = level;
-        switch(level) {
-            case 1: // Easy
-                pacmanSpeed = 4;
-                ghostBaseSpeed = 2;
-                ghostChaseProbability = 0.7;
-                ghostChaseRange = 5 * tileSize;
-                break;
-            case 2: // Medium
-                pacmanSpeed = 5;
-                ghostBaseSpeed = 3;
-                ghostChaseProbability = 0.8;
-                ghostChaseRange = 7 * tileSize;
-                break;
-            case 3: // Hard
-                pacmanSpeed = 6;
-                ghostBaseSpeed = 4;
-                ghostChaseProbability = 0.9;
-                ghostChaseRange = 9 * tileSize;
-                break;
-        }
-        
-        if (pacman != null) {
-            pacman.speed = pacmanSpeed;
-        }
-        for (Block ghost : ghosts) {
-            ghost.speed = ghostBaseSpeed;
-        }
+    private void playInGameMusic() {
+        audio.play(IN_GAME_MUSIC);
     }
 
-    public void loadMap() {
-        walls.clear();
-        foods.clear();
-        ghosts.clear();
-        cherry = null;
-        powerFood = null;
+    private void stopAllMusic() {
+        audio.stop();
+    }
 
-        for (int r = 0; r < rowCount; r++) {
-            String row = tileMap[r];
-            for (int c = 0; c < columnCount && c < row.length(); c++) {
-                char tileMapChar = row.charAt(c);
-                int x = c * tileSize;
-                int y = r * tileSize;
+    private void quit() {
+        saveReplay();
+        stopAllMusic();
+        System.exit(0);
+    }
 
-                switch (tileMapChar) {
-                    case 'X':
-                        walls.add(new Block(wallImage, wallColor, x, y, tileSize, tileSize));
-                        break;
-                    case 'b':
-                        Block blueGhost = new Block(blueGhostImage, null, x, y, tileSize, tileSize);
-                        blueGhost.speed = ghostBaseSpeed;
-                        ghosts.add(blueGhost);
-                        break;
-                    case 'o':
-                        Block orangeGhost = new Block(orangeGhostImage, null, x, y, tileSize, tileSize);
-                        orangeGhost.speed = ghostBaseSpeed;
-                        ghosts.add(orangeGhost);
-                        break;
-                    case 'p':
-                        Block pinkGhost = new Block(pinkGhostImage, null, x, y, tileSize, tileSize);
-                        pinkGhost.speed = ghostBaseSpeed;
-                        ghosts.add(pinkGhost);
-                        break;
-                    case 'r':
-                        Block redGhost = new Block(redGhostImage, null, x, y, tileSize, tileSize);
-                        redGhost.speed = ghostBaseSpeed;
-                        ghosts.add(redGhost);
-                        break;
-                    case 'P':
-                        pacman = new Block(null, Color.YELLOW, x, y, tileSize, tileSize);
-                        pacman.direction = 'R';
-                        pacman.speed = pacmanSpeed;
-                        break;
-                    case ' ':
-                        foods.add(new Block(null, Color.WHITE, x + 14, y + 14, 4, 4));
-                        break;
-                }
-            }
+    // Every game starts from a fresh seed so it can be recorded and replayed
+    private void startGame() {
+        saveReplay();
+        long seed = System.nanoTime();
+        world.restart(seed);
+        if (REPLAY_DIR != null) {
+            replay = new ReplayRecorder(world, seed);
         }
-        
-        // Spawn initial items immediately after loading map
-        spawnInitialItems();
     }
-    
-    private void spawnInitialItems() {
-        ArrayList<Point> emptySpaces = new ArrayList<>();
-        
-        // Find all empty spaces not occupied by walls, pacman, or ghosts
-        for (int r = 0; r < rowCount; r++) {
-            String row = tileMap[r];
-            for (int c = 0; c < columnCount && c < row.length(); c++) {
-                if (row.charAt(c) == ' ') {
-                    int x = c * tileSize;
-                    int y = r * tileSize;
-                    boolean occupied = false;
-                    
-                    // Check if this space is near pacman or ghosts
-                    if (pacman != null && 
-                        Math.abs(pacman.x - x) < tileSize && 
-                        Math.abs(pacman.y - y) < tileSize) {
-                        occupied = true;
-                    }
-                    
-                    for (Block ghost : ghosts) {
-                        if (Math.abs(ghost.x - x) < tileSize && 
-                            Math.abs(ghost.y - y) < tileSize) {
-                            occupied = true;
-                            break;
-                        }
-                    }
-                    
-                    if (!occupied) {
-                        emptySpaces.add(new Point(x, y));
-                    }
-                }
-            }
-        }
-        
-        // Spawn cherry if we have empty spaces
-        if (!emptySpaces.isEmpty()) {
-            Collections.shuffle(emptySpaces);
-            Point cherryPos = emptySpaces.remove(0);
-            cherry = new Block(cherryImage, null, cherryPos.x, cherryPos.y, tileSize, tileSize);
-            
-            // Spawn power food if we have another empty space
-            if (!emptySpaces.isEmpty()) {
-                Point powerPos = emptySpaces.remove(0);
-                powerFood = new Block(powerFoodImage, null, powerPos.x + 8, powerPos.y + 8, 16, 16);
-            }
+
+    private void steer(char direction) {
+        world.setPacmanDirection(direction);
+        if (replay != null) {
+            replay.input(direction);
         }
     }
 
-    private void playMainMenuMusic() {
-        stopAllMusic();
-        mainMenuPlayer = new PlayerThread("/pacman/backsoundMain.mp3", true);
-        mainMenuPlayer.start();
+    // The file is written in the background; see ReplayWriter
+    private void saveReplay() {
+        if (replay == null) return;
+        replayWriter.submit(replay);
+        replay = null;
     }
 
-    private void playInGameMusic() {
-        stopAllMusic();
-        inGamePlayer = new PlayerThread("/pacman/backsoundingame.mp3", true);
-        inGamePlayer.start();
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (activeRenderer != null) return; // the game loop draws on the canvas
+        FrameSnapshot frame = frames.front();
+        paintFrame(g, frame);
+        frameShown(frame);
     }
 
-    private void stopAllMusic() {
-        if (mainMenuPlayer != null) {
-            mainMenuPlayer.stopMusic();
-            mainMenuPlayer = null;
-        }
-        if (inGamePlayer != null) {
-            inGamePlayer.stopMusic();
-            inGamePlayer = null;
+    private void present() {
+        FrameSnapshot frame = frames.front();
+        long showNanos = activeRenderer.present(g -> paintFrame(g, frame));
+        if (showNanos >= 0) {
+            profiler.record(TickProfiler.Phase.PRESENT, showNanos);
+            frameShown(frame);
         }
     }
 
-    private void initializeGhosts() {
-        for (Block ghost : ghosts) {
-            resetGhostPosition(ghost);
+    private void paintFrame(Graphics g, FrameSnapshot frame) {
+        long start = System.nanoTime();
+        draw(g, frame);
+        profiler.record(TickProfiler.Phase.PAINT, System.nanoTime() - start);
+        if (showProfiler) {
+            drawProfiler(g);
         }
     }
 
-    private void resetGhostPosition(Block ghost) {
-        ghost.reset();
-        
-        // Try different directions until we find one that works
-        ArrayList<Character> dirs = new ArrayList<>(Arrays.asList('U', 'D', 'L', 'R'));
-        Collections.shuffle(dirs);
-        
-        for (char dir : dirs) {
-            ghost.updateDirection(dir);
-            if (ghost.moving) break;
+    // Records the key to screen latency the first time a snapshot is shown.
+    // With Swing painting the frame is still to be copied to the screen.
+    private void frameShown(FrameSnapshot frame) {
+        if (frame.sequence == shownSequence) return;
+        shownSequence = frame.sequence;
+        if (frame.inputAt != 0) {
+            profiler.record(TickProfiler.Phase.INPUT_LATENCY, System.nanoTime() - frame.inputAt);
         }
-        
-        // Force initial movement
-        ghost.x += ghost.velocityX;
-        ghost.y += ghost.velocityY;
     }
 
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        draw(g);
+    private void drawProfiler(Graphics g) {
+        String render = activeRenderer == null ? RENDER_SWING
+            : activeRenderer.pageFlipping() ? RENDER_FLIPPING : RENDER_BLITTING;
+        String[] lines = profiler.summary();
+        g.setFont(PROFILER_FONT);
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int width = metrics.stringWidth(render);
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        g.setColor(OVERLAY_COLOR);
+        g.fillRect(5, 35, width + 10, (lines.length + 1) * lineHeight + 10);
+        g.setColor(Color.GREEN);
+        int y = 40 + metrics.getAscent();
+        g.drawString(render, 10, y);
+        for (String line : lines) {
+            y += lineHeight;
+            g.drawString(line, 10, y);
+        }
     }
 
+    // Draws the latest snapshot; only from the thread that paints
     public void draw(Graphics g) {
-        switch (gameState) {
+        draw(g, frames.front());
+    }
+
+    // Reads no game state but the snapshot
+    private void draw(Graphics g, FrameSnapshot frame) {
+        switch (frame.state) {
             case MAIN_MENU:
-                drawMainMenu(g);
+                drawMainMenu(g, frame);
                 break;
             case LEVEL_SELECT:
-                drawLevelSelect(g);
+                drawLevelSelect(g, frame);
                 break;
             case LEVEL_INFO:
-                drawGame(g);
-                drawLevelInfo(g);
+                drawGame(g, frame);
+                drawLevelInfo(g, frame);
                 break;
             case PLAYING:
             case PAUSED:
-                drawGame(g);
-                if (gameState == GameState.PAUSED) {
-                    drawPauseScreen(g);
+                drawGame(g, frame);
+                if (frame.state == GameState.PAUSED) {
+                    drawPauseScreen(g, frame);
                 }
                 break;
             case GAME_OVER:
-                drawGame(g);
-                drawGameOverScreen(g);
+                drawGame(g, frame);
+                drawGameOverScreen(g, frame);
                 break;
             case GAME_WIN:
-                drawGame(g);
-                drawGameWinScreen(g);
+                drawGame(g, frame);
+                drawGameWinScreen(g, frame);
                 break;
         }
     }
     
-    private void drawMainMenu(Graphics g) {
+    private void drawMainMenu(Graphics g, FrameSnapshot frame) {
         // Draw title
         g.setColor(Color.YELLOW);
-        g.setFont(new Font("Arial", Font.BOLD, 48));
+        g.setFont(TITLE_FONT);
         String title = "PAC-MAN";
         int titleX = (boardWidth - g.getFontMetrics().stringWidth(title)) / 2;
         g.drawString(title, titleX, boardHeight / 4);
         
         // Draw current level and high score
-        g.setFont(new Font("Arial", Font.BOLD, 24));
-        String levelText = "Level: " + currentLevel;
+        g.setFont(SUBTITLE_FONT);
+        String levelText = levelLabel.of(frame.level);
         int levelX = (boardWidth - g.getFontMetrics().stringWidth(levelText)) / 2;
         g.drawString(levelText, levelX, boardHeight / 3);
         
-        String highScoreText = "High Score: " + highScores.get(currentLevel);
+        String highScoreText = highScoreLabel.of(frame.highScore);
         int highScoreX = (boardWidth - g.getFontMetrics().stringWidth(highScoreText)) / 2;
         g.drawString(highScoreText, highScoreX, boardHeight / 3 + 30);
         
         // Draw menu options
-        g.setFont(new Font("Arial", Font.BOLD, 32));
+        g.setFont(MENU_FONT);
         for (int i = 0; i < MAIN_MENU_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == frame.selectedOption) {
                 g.setColor(Color.YELLOW);
             } else {
                 g.setColor(Color.WHITE);
@@ -534,18 +398,38 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
         }
     }
     
-    private void drawLevelSelect(Graphics g) {
+    // One entry per level of the pack, then "Back"
+    private static String[] levelOptions(int levels) {
+        String[] options = new String[levels + 1];
+        for (int level = 1; level <= levels; level++) {
+            String difficulty = difficultyName(level);
+            options[level - 1] = difficulty.isEmpty() ? "Level " + level : "Level " + level + " - " + difficulty;
+        }
+        options[levels] = "Back";
+        return options;
+    }
+
+    private static String difficultyName(int level) {
+        switch (level) {
+            case 1: return "Easy";
+            case 2: return "Medium";
+            case 3: return "Hard";
+            default: return "";
+        }
+    }
+
+    private void drawLevelSelect(Graphics g, FrameSnapshot frame) {
         // Draw title
         g.setColor(Color.YELLOW);
-        g.setFont(new Font("Arial", Font.BOLD, 36));
+        g.setFont(HEADING_FONT);
         String title = "SELECT LEVEL";
         int titleX = (boardWidth - g.getFontMetrics().stringWidth(title)) / 2;
         g.drawString(title, titleX, boardHeight / 4);
         
         // Draw level options
-        g.setFont(new Font("Arial", Font.BOLD, 28));
+        g.setFont(LEVEL_MENU_FONT);
         for (int i = 0; i < LEVEL_OPTIONS.length; i++) {
-            if (i == selectedLevelOption) {
+            if (i == frame.selectedLevel) {
                 g.setColor(Color.YELLOW);
             } else {
                 g.setColor(Color.WHITE);
@@ -556,175 +440,222 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
         }
     }
     
-    private void drawLevelInfo(Graphics g) {
+    private void drawLevelInfo(Graphics g, FrameSnapshot frame) {
         // Semi-transparent overlay
-        g.setColor(new Color(0, 0, 0, 180));
+        g.setColor(OVERLAY_COLOR);
         g.fillRect(0, 0, boardWidth, boardHeight);
         
         // Level info text
         g.setColor(Color.YELLOW);
-        g.setFont(new Font("Arial", Font.BOLD, 36));
-        String title = "LEVEL " + currentLevel;
+        g.setFont(HEADING_FONT);
+        String title = levelTitleLabel.of(frame.level);
         int titleX = (boardWidth - g.getFontMetrics().stringWidth(title)) / 2;
         g.drawString(title, titleX, boardHeight / 2);
         
-        String difficulty = "";
-        switch(currentLevel) {
-            case 1: difficulty = "Easy"; break;
-            case 2: difficulty = "Medium"; break;
-            case 3: difficulty = "Hard"; break;
-        }
+        String difficulty = difficultyName(frame.level);
         
-        g.setFont(new Font("Arial", Font.PLAIN, 24));
+        g.setFont(INFO_FONT);
         int diffX = (boardWidth - g.getFontMetrics().stringWidth(difficulty)) / 2;
         g.drawString(difficulty, diffX, boardHeight / 2 + 40);
         
-        g.setFont(new Font("Arial", Font.PLAIN, 18));
+        g.setFont(HINT_FONT);
         String startText = "Press any key to start";
         int startX = (boardWidth - g.getFontMetrics().stringWidth(startText)) / 2;
         g.drawString(startText, startX, boardHeight / 2 + 80);
     }
     
-    private void drawGame(Graphics g) {
-        // Draw walls
-        for (Block wall : walls) {
-            if (wall.image != null) {
-                g.drawImage(wall.image, wall.x, wall.y, wall.width, wall.height, null);
-            } else {
-                g.setColor(wall.color);
-                g.fillRect(wall.x, wall.y, wall.width, wall.height);
+    // The atlas once it has loaded; the wall layer is redrawn with it then
+    private SpriteAtlas sprites() {
+        if (sprites == null) {
+            sprites = assets.getNow(null);
+            if (sprites != null) {
+                wallLayerVersion = -1;
             }
         }
+        return sprites;
+    }
+
+    private void drawGame(Graphics screen, FrameSnapshot frame) {
+        SpriteAtlas sprites = sprites();
+        // The maze is drawn in world coordinates, shifted by the camera
+        int rows = frame.rows;
+        int columns = frame.columns;
+        camera.follow(frame.pacmanX + frame.pacmanSize / 2, frame.pacmanY + frame.pacmanSize / 2,
+                      columns * tileSize, rows * tileSize);
+        Graphics g = screen.create();
+        g.translate(-camera.getX(), -camera.getY());
+
+        // Only the tiles in view are looked at
+        int firstRow = Math.max(0, camera.firstRow(tileSize));
+        int lastRow = Math.min(rows - 1, camera.lastRow(tileSize));
+        int firstColumn = Math.max(0, camera.firstColumn(tileSize));
+        int lastColumn = Math.min(columns - 1, camera.lastColumn(tileSize));
+
+        // Draw walls
+        drawWalls(g, frame, firstRow, lastRow, firstColumn, lastColumn);
 
         // Draw food
-        for (Block food : foods) {
-            g.setColor(food.color);
-            g.fillOval(food.x, food.y, food.width, food.height);
+        g.setColor(Color.WHITE);
+        BitSet foodTiles = frame.food;
+        for (int r = firstRow; r <= lastRow; r++) {
+            int end = r * columns + lastColumn;
+            for (int tile = foodTiles.nextSetBit(r * columns + firstColumn); tile >= 0 && tile <= end;
+                 tile = foodTiles.nextSetBit(tile + 1)) {
+                g.fillOval((tile % columns) * tileSize + GameWorld.FOOD_OFFSET,
+                           r * tileSize + GameWorld.FOOD_OFFSET,
+                           GameWorld.FOOD_SIZE, GameWorld.FOOD_SIZE);
+            }
         }
         
         // Draw power food
-        if (powerFood != null && powerFood.image != null) {
-            g.drawImage(powerFood.image, powerFood.x, powerFood.y, powerFood.width, powerFood.height, null);
+        int powerFoodSize = frame.powerFoodSize;
+        if (powerFoodSize > 0 && sprites != null &&
+            camera.isVisible(frame.powerFoodX, frame.powerFoodY, powerFoodSize, powerFoodSize)) {
+            sprites.draw(g, SpriteAtlas.Sprite.POWER_FOOD, frame.powerFoodX, frame.powerFoodY);
         }
         
         // Draw cherry
-        if (cherry != null && cherry.image != null) {
-            g.drawImage(cherry.image, cherry.x, cherry.y, cherry.width, cherry.height, null);
+        int cherrySize = frame.cherrySize;
+        if (cherrySize > 0 && sprites != null &&
+            camera.isVisible(frame.cherryX, frame.cherryY, cherrySize, cherrySize)) {
+            sprites.draw(g, SpriteAtlas.Sprite.CHERRY, frame.cherryX, frame.cherryY);
         }
         
         // Draw ghosts
-        for (Block ghost : ghosts) {
-            if (ghost.isScared) {
-                if (scaredGhostImage != null) {
-                    g.drawImage(scaredGhostImage, ghost.x, ghost.y, ghost.width, ghost.height, null);
-                } else {
-                    g.setColor(Color.CYAN);
-                    g.fillRect(ghost.x, ghost.y, ghost.width, ghost.height);
-                }
-            } else {
-                if (ghost.image != null) {
-                    g.drawImage(ghost.image, ghost.x, ghost.y, ghost.width, ghost.height, null);
-                } else {
-                    g.setColor(Color.RED);
-                    g.fillRect(ghost.x, ghost.y, ghost.width, ghost.height);
-                }
+        int ghostSize = frame.ghostSize;
+        for (int i = 0; i < frame.ghostCount; i++) {
+            int x = frame.ghostX[i], y = frame.ghostY[i];
+            if (!camera.isVisible(x, y, ghostSize, ghostSize)) {
+                continue;
+            }
+            boolean scared = frame.ghostScared[i];
+            SpriteAtlas.Sprite sprite = scared ? SpriteAtlas.Sprite.SCARED_GHOST : getGhostSprite(frame.ghostType[i]);
+            if (sprites == null || sprite == null || !sprites.draw(g, sprite, x, y)) {
+                g.setColor(scared ? Color.CYAN : Color.RED);
+                g.fillRect(x, y, ghostSize, ghostSize);
             }
         }
 
         // Draw Pac-Man
-        drawPacMan(g);
+        pacmanFrames.draw(g, frame.pacmanX, frame.pacmanY, frame.pacmanDirection, frame.poweredUp, frame.mouthOpen);
+        g.dispose();
         
         // Draw UI
+        g = screen;
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 20));
+        g.setFont(HUD_FONT);
         
         // Score and high score
-        g.drawString("Score: " + currentScore, 10, 25);
-        g.drawString("High: " + highScores.get(currentLevel), 150, 25);
+        g.drawString(scoreLabel.of(frame.score), 10, 25);
+        g.drawString(highLabel.of(frame.highScore), 150, 25);
         
         // Level
-        g.drawString("Level: " + currentLevel, boardWidth / 2 - 30, 25);
+        g.drawString(levelLabel.of(frame.level), boardWidth / 2 - 30, 25);
         
         // Lives
-        if (heartImage != null) {
+        int lives = frame.lives;
+        if (sprites != null && sprites.has(SpriteAtlas.Sprite.HEART)) {
             for (int i = 0; i < lives; i++) {
-                g.drawImage(heartImage, 10 + (i * 30), boardHeight - 30, 25, 25, null);
+                sprites.draw(g, SpriteAtlas.Sprite.HEART, 10 + (i * 30), boardHeight - 30);
             }
         } else {
             g.setColor(Color.RED);
             for (int i = 0; i < lives; i++) {
-                g.fillOval(10 + (i * 30), boardHeight - 30, 25, 25);
+                g.fillOval(10 + (i * 30), boardHeight - 30, HEART_SIZE, HEART_SIZE);
             }
         }
         
         // Power-up timer
-        if (isPoweredUp) {
-            int timeLeft = (POWER_UP_DURATION - powerUpTimer) / 60;
+        if (frame.poweredUp) {
+            int timeLeft = frame.powerUpTicksLeft / GameWorld.TICKS_PER_SECOND;
             g.setColor(Color.YELLOW);
-            String powerText = "Power: " + timeLeft + "s";
+            String powerText = powerLabel.of(timeLeft);
             int powerX = (boardWidth - g.getFontMetrics().stringWidth(powerText)) / 2;
             g.drawString(powerText, powerX, boardHeight - 10);
         }
     }
 
-    private void drawPacMan(Graphics g) {
-        Color pacmanColor = isPoweredUp ? Color.ORANGE : Color.YELLOW;
-        g.setColor(pacmanColor);
-        
-        int startAngle = 0;
-        int arcAngle = 360;
-        
-        // Update animation
-        pacmanSpriteCounter++;
-        if (pacmanSpriteCounter > PACMAN_ANIMATION_SPEED) {
-            pacmanSpriteNum = (pacmanSpriteNum == 1) ? 2 : 1;
-            pacmanSpriteCounter = 0;
+    private void drawWalls(Graphics g, FrameSnapshot frame, int firstRow, int lastRow, int firstColumn, int lastColumn) {
+        int width = frame.columns * tileSize;
+        int height = frame.rows * tileSize;
+        if ((long) width * height > WALL_LAYER_MAX_PIXELS) {
+            wallLayer = null;
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int c = firstColumn; c <= lastColumn; c++) {
+                    if (frame.walls.isWall(r, c)) {
+                        drawWall(g, c * tileSize, r * tileSize);
+                    }
+                }
+            }
+            return;
         }
-        
-        if (pacmanSpriteNum == 2) {
-            switch (pacman.direction) {
-                case 'U': startAngle = 135; arcAngle = 270; break;
-                case 'D': startAngle = 315; arcAngle = 270; break;
-                case 'L': startAngle = 225; arcAngle = 270; break;
-                case 'R': startAngle = 45; arcAngle = 270; break;
+
+        if (wallLayer == null || wallLayerVersion != frame.mapVersion) {
+            buildWallLayer(frame, width, height);
+        }
+        int x1 = Math.max(0, camera.getX());
+        int y1 = Math.max(0, camera.getY());
+        int x2 = Math.min(width, camera.getX() + camera.getViewWidth());
+        int y2 = Math.min(height, camera.getY() + camera.getViewHeight());
+        g.drawImage(wallLayer, x1, y1, x2, y2, x1, y1, x2, y2, null);
+    }
+
+    private void buildWallLayer(FrameSnapshot frame, int width, int height) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (wallLayer == null || wallLayer.getWidth() != width || wallLayer.getHeight() != height) {
+            wallLayer = gc != null
+                ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D g = wallLayer.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+        g.setComposite(AlphaComposite.SrcOver);
+        for (int r = 0; r < frame.rows; r++) {
+            for (int c = 0; c < frame.columns; c++) {
+                if (frame.walls.isWall(r, c)) {
+                    drawWall(g, c * tileSize, r * tileSize);
+                }
             }
         }
-        
-        // Draw Pac-Man
-        g.fillArc(pacman.x, pacman.y, pacman.width, pacman.height, startAngle, arcAngle);
-        
-        // Draw eye
-        g.setColor(Color.BLACK);
-        int eyeSize = tileSize / 8;
-        int eyeX = pacman.x + tileSize/2;
-        int eyeY = pacman.y + tileSize/4;
-        
-        switch (pacman.direction) {
-            case 'U': eyeX -= eyeSize/2; break;
-            case 'D': eyeX -= eyeSize/2; eyeY = pacman.y + tileSize/2; break;
-            case 'L': eyeX = pacman.x + tileSize/4; eyeY -= eyeSize/2; break;
-            case 'R': eyeX = pacman.x + tileSize*3/4 - eyeSize; eyeY -= eyeSize/2; break;
+        g.dispose();
+        wallLayerVersion = frame.mapVersion;
+    }
+
+    private void drawWall(Graphics g, int x, int y) {
+        if (sprites == null || !sprites.draw(g, SpriteAtlas.Sprite.WALL, x, y)) {
+            g.setColor(wallColor);
+            g.fillRect(x, y, tileSize, tileSize);
+        }
+    }
+
+    private SpriteAtlas.Sprite getGhostSprite(char ghostType) {
+        switch (ghostType) {
+            case GameWorld.RED_GHOST: return SpriteAtlas.Sprite.RED_GHOST;
+            case GameWorld.BLUE_GHOST: return SpriteAtlas.Sprite.BLUE_GHOST;
+            case GameWorld.PINK_GHOST: return SpriteAtlas.Sprite.PINK_GHOST;
+            case GameWorld.ORANGE_GHOST: return SpriteAtlas.Sprite.ORANGE_GHOST;
+            default: return null;
         }
-        
-        g.fillOval(eyeX, eyeY, eyeSize, eyeSize);
     }
 
-    private void drawPauseScreen(Graphics g) {
+    private void drawPauseScreen(Graphics g, FrameSnapshot frame) {
         // Semi-transparent overlay
-        g.setColor(new Color(0, 0, 0, 180));
+        g.setColor(OVERLAY_COLOR);
         g.fillRect(0, 0, boardWidth, boardHeight);
         
         // Pause text
         g.setColor(Color.YELLOW);
-        g.setFont(new Font("Arial", Font.BOLD, 48));
+        g.setFont(TITLE_FONT);
         String title = "PAUSED";
         int titleX = (boardWidth - g.getFontMetrics().stringWidth(title)) / 2;
         g.drawString(title, titleX, boardHeight / 3);
         
         // Draw menu options
-        g.setFont(new Font("Arial", Font.BOLD, 32));
+        g.setFont(MENU_FONT);
         for (int i = 0; i < PAUSE_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == frame.selectedOption) {
                 g.setColor(Color.YELLOW);
             } else {
                 g.setColor(Color.WHITE);
@@ -735,29 +666,29 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
         }
     }
 
-    private void drawGameOverScreen(Graphics g) {
+    private void drawGameOverScreen(Graphics g, FrameSnapshot frame) {
         // Semi-transparent overlay
-        g.setColor(new Color(0, 0, 0, 180));
+        g.setColor(OVERLAY_COLOR);
         g.fillRect(0, 0, boardWidth, boardHeight);
         
         // Game over text
         g.setColor(Color.RED);
-        g.setFont(new Font("Arial", Font.BOLD, 48));
+        g.setFont(TITLE_FONT);
         String title = "GAME OVER";
         int titleX = (boardWidth - g.getFontMetrics().stringWidth(title)) / 2;
         g.drawString(title, titleX, boardHeight / 3);
         
         // Score text
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 32));
-        String scoreText = "Score: " + currentScore;
+        g.setFont(MENU_FONT);
+        String scoreText = scoreLabel.of(frame.score);
         int scoreX = (boardWidth - g.getFontMetrics().stringWidth(scoreText)) / 2;
         g.drawString(scoreText, scoreX, boardHeight / 2 - 40);
         
         // Draw menu options
-        g.setFont(new Font("Arial", Font.BOLD, 32));
+        g.setFont(MENU_FONT);
         for (int i = 0; i < GAME_OVER_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == frame.selectedOption) {
                 g.setColor(Color.YELLOW);
             } else {
                 g.setColor(Color.WHITE);
@@ -768,29 +699,29 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
         }
     }
 
-    private void drawGameWinScreen(Graphics g) {
+    private void drawGameWinScreen(Graphics g, FrameSnapshot frame) {
         // Semi-transparent overlay
-        g.setColor(new Color(0, 0, 0, 180));
+        g.setColor(OVERLAY_COLOR);
         g.fillRect(0, 0, boardWidth, boardHeight);
         
         // Game win text
         g.setColor(Color.GREEN);
-        g.setFont(new Font("Arial", Font.BOLD, 48));
+        g.setFont(TITLE_FONT);
         String title = "LEVEL COMPLETE!";
         int titleX = (boardWidth - g.getFontMetrics().stringWidth(title)) / 2;
         g.drawString(title, titleX, boardHeight / 3);
         
         // Score text
         g.setColor(Color.WHITE);
-        g.setFont(new Font("Arial", Font.BOLD, 32));
-        String scoreText = "Score: " + currentScore;
+        g.setFont(MENU_FONT);
+        String scoreText = scoreLabel.of(frame.score);
         int scoreX = (boardWidth - g.getFontMetrics().stringWidth(scoreText)) / 2;
         g.drawString(scoreText, scoreX, boardHeight / 2 - 40);
         
         // Draw menu options
-        g.setFont(new Font("Arial", Font.BOLD, 32));
+        g.setFont(MENU_FONT);
         for (int i = 0; i < GAME_WIN_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == frame.selectedOption) {
                 g.setColor(Color.YELLOW);
             } else {
                 g.setColor(Color.WHITE);
@@ -810,320 +741,63 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
                 gameState = GameState.PLAYING;
                 playInGameMusic();
             }
-            repaint();
             return;
         }
         
-        // Update power-up timer
-        if (isPoweredUp) {
-            powerUpTimer++;
-            if (powerUpTimer >= POWER_UP_DURATION) {
-                isPoweredUp = false;
-                powerUpTimer = 0;
-                for (Block ghost : ghosts) {
-                    ghost.isScared = false;
-                    ghost.isFrozen = false;
-                }
-            }
-        }
-        
-        // Spawn cherry periodically
-        cherrySpawnTimer++;
-        if (cherry == null && cherrySpawnTimer > CHERRY_SPAWN_INTERVAL && 
-            random.nextDouble() < 0.015) {
-            spawnCherry();
-            cherrySpawnTimer = 0;
-        }
-        
-        // Spawn power food periodically (only if none exists)
-        powerFoodSpawnTimer++;
-        if (powerFood == null && powerFoodSpawnTimer > POWER_FOOD_SPAWN_INTERVAL && 
-            random.nextDouble() < 0.01) {
-            spawnPowerFood();
-            powerFoodSpawnTimer = 0;
-        }
-        
-        // Move Pac-Man
-        pacman.x += pacman.velocityX;
-        pacman.y += pacman.velocityY;
-
-        // Wall collision for Pac-Man
-        for (Block wall : walls) {
-            if (collision(pacman, wall)) {
-                pacman.x -= pacman.velocityX;
-                pacman.y -= pacman.velocityY;
+        switch (world.tick()) {
+            case GAME_OVER:
+                gameState = GameState.GAME_OVER;
+                scores.submit(world.getCurrentLevel(), world.getScore());
+                saveReplay();
+                stopAllMusic();
                 break;
-            }
-        }
-
-        // Move and handle ghosts
-        ghostDirectionChangeCounter++;
-        for (Block ghost : ghosts) {
-            if (ghost.isFrozen) continue;
-            
-            // Change direction periodically or when stuck
-            if (ghostDirectionChangeCounter % GHOST_DIRECTION_CHANGE_INTERVAL == 0 || !ghost.moving) {
-                if (ghost.isScared) {
-                    // Improved escape behavior
-                    char bestDir = getBestEscapeDirection(ghost);
-                    ghost.updateDirection(bestDir);
-                } else {
-                    double distanceToPacman = Math.sqrt(
-                        Math.pow(ghost.x - pacman.x, 2) + 
-                        Math.pow(ghost.y - pacman.y, 2));
-                    
-                    // More intelligent chasing with randomness
-                    if (distanceToPacman < ghostChaseRange) {
-                        double chaseRand = random.nextDouble();
-                        if (chaseRand < ghostChaseProbability) {
-                            // Chase Pac-Man
-                            char chaseDirection = getDirectionTowardsPacman(ghost);
-                            ghost.updateDirection(chaseDirection);
-                        } else if (chaseRand < ghostChaseProbability + 0.1) {
-                            // Move randomly
-                            char newDirection = directions[random.nextInt(4)];
-                            ghost.updateDirection(newDirection);
-                        } else {
-                            // Move to intercept Pac-Man
-                            char interceptDirection = getInterceptDirection(ghost);
-                            ghost.updateDirection(interceptDirection);
-                        }
-                    } else {
-                        // Random movement when far away
-                        char newDirection = directions[random.nextInt(4)];
-                        ghost.updateDirection(newDirection);
-                    }
-                }
-            }
-            
-            
-            // Move ghost
-            ghost.x += ghost.velocityX;
-            ghost.y += ghost.velocityY;
-            
-            // Check ghost-wall collisions
-            boolean ghostCollided = false;
-            for (Block wall : walls) {
-                if (collision(ghost, wall)) {
-                    ghost.x -= ghost.velocityX;
-                    ghost.y -= ghost.velocityY;
-                    ghost.moving = false;
-                    ghostCollided = true;
-                    break;
-                }
-            }
-            
-            if (!ghostCollided) {
-                ghost.moving = true;
-            }
-            
-            // Check ghost-pacman collision
-            if (collision(ghost, pacman)) {
-                if (isPoweredUp && ghost.isScared) {
-                    ghost.reset();
-                    ghost.isScared = false;
-                    currentScore += 200;
-                    if (currentScore > highScores.get(currentLevel)) {
-                        highScores.put(currentLevel, currentScore);
-                    }
-                } else if (!isPoweredUp) {
-                    lives--;
-                    if (lives <= 0) {
-                        gameState = GameState.GAME_OVER;
-                        stopAllMusic();
-                        return;
-                    }
-                    resetPositions();
-                    break;
-                }
-            }
-            
-        }
-        
-
-        // Food collision
-        Block foodEaten = null;
-        for (Block food : foods) {
-            if (collision(pacman, food)) {
-                foodEaten = food;
-                currentScore += 10;
-                if (currentScore > highScores.get(currentLevel)) {
-                    highScores.put(currentLevel, currentScore);
-                }
-            }
-        }
-        foods.remove(foodEaten);
-        
-        // Power food collision
-        if (powerFood != null && collision(pacman, powerFood)) {
-            currentScore += 50;
-            isPoweredUp = true;
-            powerUpTimer = 0;
-            for (Block ghost : ghosts) {
-                ghost.isScared = true;
-                ghost.isFrozen = false;
-            }
-            powerFood = null;
-        }
-        
-        // Cherry collision
-        if (cherry != null && collision(pacman, cherry)) {
-            currentScore += 100;
-            cherry = null;
-        }
-
-        if (foods.isEmpty() && powerFood == null) {
-            if (currentLevel < MAX_LEVEL) {
-                currentLevel++;
-                setLevelDifficulty(currentLevel);
-                loadMap();
-                initializeGhosts();
-                resetPositions();
+            case LEVEL_CLEARED:
+                // The world is already on the next level
+                scores.submit(world.getCurrentLevel() - 1, world.getScore());
                 showLevelInfo();
-            } else {
+                break;
+            case GAME_WIN:
                 gameState = GameState.GAME_WIN;
+                scores.submit(world.getCurrentLevel(), world.getScore());
+                saveReplay();
                 stopAllMusic();
-            }
-        }
-    }
-    
-    private char getBestEscapeDirection(Block ghost) {
-        // Calculate distance to Pac-Man
-        int dx = pacman.x - ghost.x;
-        int dy = pacman.y - ghost.y;
-        
-        // Try directions that maximize distance from Pac-Man
-        char[] possibleDirs = {
-            dx > 0 ? 'L' : 'R', // Opposite X direction
-            dy > 0 ? 'U' : 'D',  // Opposite Y direction
-            directions[random.nextInt(4)], // Random direction as fallback
-            directions[random.nextInt(4)]  // Another random direction
-        };
-        
-        // Try each direction until we find a valid one
-        for (char dir : possibleDirs) {
-            ghost.updateDirection(dir);
-            if (ghost.moving) {
-                return dir;
-            }
-        }
-        
-        // If all else fails, don't move
-        return ghost.direction;
-    }
-
-    private char getDirectionTowardsPacman(Block ghost) {
-        int dx = pacman.x - ghost.x;
-        int dy = pacman.y - ghost.y;
-        
-        if (Math.abs(dx) > Math.abs(dy)) {
-            return dx > 0 ? 'R' : 'L';
-        } else {
-            return dy > 0 ? 'D' : 'U';
-        }
-    }
-
-    private void spawnCherry() {
-        ArrayList<Point> emptySpaces = getEmptySpaces();
-        if (!emptySpaces.isEmpty()) {
-            Point spawnPos = emptySpaces.get(random.nextInt(emptySpaces.size()));
-            cherry = new Block(cherryImage, null, spawnPos.x, spawnPos.y, tileSize, tileSize);
-        }
-    }
-    
-    private void spawnPowerFood() {
-        ArrayList<Point> emptySpaces = getEmptySpaces();
-        if (!emptySpaces.isEmpty()) {
-            Point spawnPos = emptySpaces.get(random.nextInt(emptySpaces.size()));
-            powerFood = new Block(powerFoodImage, null, spawnPos.x + 8, spawnPos.y + 8, 16, 16);
-        }
-    }
-    
-    private ArrayList<Point> getEmptySpaces() {
-        ArrayList<Point> emptySpaces = new ArrayList<>();
-        for (int r = 0; r < rowCount; r++) {
-            String row = tileMap[r];
-            for (int c = 0; c < Math.min(columnCount, row.length()); c++) {
-                if (row.charAt(c) == ' ') {
-                    Point testPoint = new Point(c * tileSize, r * tileSize);
-                    boolean occupied = false;
-                    
-                    // Check if this space already has food
-                    for (Block food : foods) {
-                        if (Math.abs(food.x - testPoint.x) < tileSize && 
-                            Math.abs(food.y - testPoint.y) < tileSize) {
-                            occupied = true;
-                            break;
-                        }
-                    }
-                    
-                    if (!occupied && 
-                        (cherry == null || !(Math.abs(cherry.x - testPoint.x) < tileSize && 
-                                             Math.abs(cherry.y - testPoint.y) < tileSize)) &&
-                        (powerFood == null || !(Math.abs(powerFood.x - testPoint.x) < tileSize && 
-                                              Math.abs(powerFood.y - testPoint.y) < tileSize))) {
-                        emptySpaces.add(testPoint);
-                    }
-                }
-            }
-        }
-        return emptySpaces;
-    }
-    private char getInterceptDirection(Block ghost) {
-        // Predict Pac-Man's future position based on current direction
-        int predictSteps = 5;
-        int pacmanFutureX = pacman.x;
-        int pacmanFutureY = pacman.y;
-        
-        switch (pacman.direction) {
-            case 'U': pacmanFutureY -= predictSteps * pacman.speed; break;
-            case 'D': pacmanFutureY += predictSteps * pacman.speed; break;
-            case 'L': pacmanFutureX -= predictSteps * pacman.speed; break;
-            case 'R': pacmanFutureX += predictSteps * pacman.speed; break;
-        }
-        
-        // Get direction towards predicted position
-        int dx = pacmanFutureX - ghost.x;
-        int dy = pacmanFutureY - ghost.y;
-        
-        if (Math.abs(dx) > Math.abs(dy)) {
-            return dx > 0 ? 'R' : 'L';
-        } else {
-            return dy > 0 ? 'D' : 'U';
+                break;
+            default:
+                break;
         }
     }
-    
 
     private void showLevelInfo() {
         gameState = GameState.LEVEL_INFO;
         levelInfoTimer = LEVEL_INFO_DURATION;
     }
 
-    public boolean collision(Block a, Block b) {
-        int padding = 2;
-        return a.x + padding < b.x + b.width - padding &&
-               a.x + a.width - padding > b.x + padding &&
-               a.y + padding < b.y + b.height - padding &&
-               a.y + a.height - padding > b.y + padding;
-    }
-
-    public void resetPositions() {
-        pacman.reset();
-        pacman.velocityX = 0;
-        pacman.velocityY = 0;
-        
-        for (Block ghost : ghosts) {
-            resetGhostPosition(ghost);
+    // Pac-Man chomps whenever the maze is on screen, paused or not
+    private void animate() {
+        if (gameState == GameState.MAIN_MENU || gameState == GameState.LEVEL_SELECT) return;
+        pacmanSpriteCounter++;
+        if (pacmanSpriteCounter > PACMAN_ANIMATION_SPEED) {
+            pacmanSpriteNum = (pacmanSpriteNum == 1) ? 2 : 1;
+            pacmanSpriteCounter = 0;
         }
-        
-        isPoweredUp = false;
-        powerUpTimer = 0;
     }
 
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        move();
-        repaint();
+    // Fills the spare snapshot and publishes it unless it looks just like the
+    // last one. inputAt: when the oldest key handled since then was pressed,
+    // or 0. A key whose snapshot never reached the screen is carried over; a
+    // key that changed nothing on screen is not measured.
+    private boolean publishFrame(long inputAt) {
+        FrameSnapshot next = frames.back();
+        next.fill(world, gameState, selectedMenuOption, selectedLevelOption, pacmanSpriteNum == 2);
+        if (next.looksLike(published)) return false;
+        if (published != null && published.sequence > shownSequence && published.inputAt != 0) {
+            inputAt = published.inputAt;
+        }
+        next.sequence = published != null ? published.sequence + 1 : 1;
+        next.inputAt = inputAt;
+        frames.publish();
+        published = next;
+        return true;
     }
 
     @Override
@@ -1132,7 +806,17 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     @Override
     public void keyPressed(KeyEvent e) {
         int code = e.getKeyCode();
-        
+        if (code == KeyEvent.VK_F3) {
+            showProfiler = !showProfiler;
+            repaint();
+            return;
+        }
+        keyPressedAt.compareAndSet(0, System.nanoTime());
+        pendingKeys.offer(code);
+        LockSupport.unpark(gameLoop);
+    }
+
+    private void handleKey(int code) {
         switch (gameState) {
             case MAIN_MENU:
                 handleMainMenuInput(code);
@@ -1164,17 +848,12 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     private void handleMainMenuInput(int code) {
         if (code == KeyEvent.VK_UP) {
             selectedMenuOption = (selectedMenuOption - 1 + MAIN_MENU_OPTIONS.length) % MAIN_MENU_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_DOWN) {
             selectedMenuOption = (selectedMenuOption + 1) % MAIN_MENU_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_ENTER) {
             switch (selectedMenuOption) {
                 case 0: // Start Game
-                    currentScore = 0;
-                    lives = 3;
-                    loadMap();
-                    initializeGhosts();
+                    startGame();
                     showLevelInfo();
                     break;
                 case 1: // Level Select
@@ -1182,8 +861,7 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
                     gameState = GameState.LEVEL_SELECT;
                     break;
                 case 2: // Quit
-                    stopAllMusic();
-                    System.exit(0);
+                    quit();
                     break;
             }
         }
@@ -1192,13 +870,11 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     private void handleLevelSelectInput(int code) {
         if (code == KeyEvent.VK_UP) {
             selectedLevelOption = (selectedLevelOption - 1 + LEVEL_OPTIONS.length) % LEVEL_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_DOWN) {
             selectedLevelOption = (selectedLevelOption + 1) % LEVEL_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_ENTER) {
-            if (selectedLevelOption < 3) {
-                setLevelDifficulty(selectedLevelOption + 1);
+            if (selectedLevelOption < LEVEL_OPTIONS.length - 1) {
+                world.setLevelDifficulty(selectedLevelOption + 1);
                 gameState = GameState.MAIN_MENU;
             } else {
                 gameState = GameState.MAIN_MENU;
@@ -1210,13 +886,13 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     
     private void handlePlayingInput(int code) {
         if (code == KeyEvent.VK_UP) {
-            pacman.updateDirection('U');
+            steer('U');
         } else if (code == KeyEvent.VK_DOWN) {
-            pacman.updateDirection('D');
+            steer('D');
         } else if (code == KeyEvent.VK_LEFT) {
-            pacman.updateDirection('L');
+            steer('L');
         } else if (code == KeyEvent.VK_RIGHT) {
-            pacman.updateDirection('R');
+            steer('R');
         } else if (code == KeyEvent.VK_ESCAPE || code == KeyEvent.VK_P) {
             selectedMenuOption = 0;
             gameState = GameState.PAUSED;
@@ -1226,30 +902,24 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     private void handlePauseMenuInput(int code) {
         if (code == KeyEvent.VK_UP) {
             selectedMenuOption = (selectedMenuOption - 1 + PAUSE_OPTIONS.length) % PAUSE_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_DOWN) {
             selectedMenuOption = (selectedMenuOption + 1) % PAUSE_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_ENTER) {
             switch (selectedMenuOption) {
                 case 0: // Resume
                     gameState = GameState.PLAYING;
                     break;
                 case 1: // Restart
-                    loadMap();
-                    initializeGhosts();
-                    resetPositions();
-                    currentScore = 0;
-                    lives = 3;
+                    startGame();
                     gameState = GameState.PLAYING;
                     break;
                 case 2: // Main Menu
+                    saveReplay();
                     gameState = GameState.MAIN_MENU;
                     playMainMenuMusic();
                     break;
                 case 3: // Quit
-                    stopAllMusic();
-                    System.exit(0);
+                    quit();
                     break;
             }
         } else if (code == KeyEvent.VK_ESCAPE) {
@@ -1260,18 +930,12 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     private void handleGameOverInput(int code) {
         if (code == KeyEvent.VK_UP) {
             selectedMenuOption = (selectedMenuOption - 1 + GAME_OVER_OPTIONS.length) % GAME_OVER_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_DOWN) {
             selectedMenuOption = (selectedMenuOption + 1) % GAME_OVER_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_ENTER) {
             switch (selectedMenuOption) {
                 case 0: // Restart
-                    loadMap();
-                    initializeGhosts();
-                    resetPositions();
-                    currentScore = 0;
-                    lives = 3;
+                    startGame();
                     gameState = GameState.PLAYING;
                     playInGameMusic();
                     break;
@@ -1280,8 +944,7 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
                     playMainMenuMusic();
                     break;
                 case 2: // Quit
-                    stopAllMusic();
-                    System.exit(0);
+                    quit();
                     break;
             }
         }
@@ -1290,19 +953,13 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     private void handleGameWinInput(int code) {
         if (code == KeyEvent.VK_UP) {
             selectedMenuOption = (selectedMenuOption - 1 + GAME_WIN_OPTIONS.length) % GAME_WIN_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_DOWN) {
             selectedMenuOption = (selectedMenuOption + 1) % GAME_WIN_OPTIONS.length;
-            repaint();
         } else if (code == KeyEvent.VK_ENTER) {
             switch (selectedMenuOption) {
                 case 0: // Next Level
-                    if (currentLevel < MAX_LEVEL) {
-                        currentLevel++;
-                        setLevelDifficulty(currentLevel);
-                        loadMap();
-                        initializeGhosts();
-                        resetPositions();
+                    if (world.getCurrentLevel() < world.getMaxLevel()) {
+                        world.nextLevel();
                         showLevelInfo();
                     } else {
                         gameState = GameState.MAIN_MENU;
@@ -1314,8 +971,7 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
                     playMainMenuMusic();
                     break;
                 case 2: // Quit
-                    stopAllMusic();
-                    System.exit(0);
+                    quit();
                     break;
             }
         }
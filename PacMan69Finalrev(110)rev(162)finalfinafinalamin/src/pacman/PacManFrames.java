@@ -0,0 +1,71 @@
+package pacman;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Every look of Pac-Man (normal and powered-up colour, four directions, mouth
+// closed and open, each with its eye) drawn once into a strip, so drawing him
+// is one blit instead of arc and oval rasterisation every frame.
+class PacManFrames {
+    private static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+    private static final Color[] COLORS = {Color.YELLOW, Color.ORANGE};
+    private static final int MOUTH_FRAMES = 2;
+
+    private final int size;
+    private final BufferedImage strip;
+
+    PacManFrames(int size, GraphicsConfiguration gc) {
+        this.size = size;
+        int frames = COLORS.length * DIRECTIONS.length * MOUTH_FRAMES;
+        strip = gc != null
+            ? gc.createCompatibleImage(frames * size, size, Transparency.TRANSLUCENT)
+            : new BufferedImage(frames * size, size, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g = strip.createGraphics();
+        for (int color = 0; color < COLORS.length; color++) {
+            for (int dir = 0; dir < DIRECTIONS.length; dir++) {
+                for (int mouth = 0; mouth < MOUTH_FRAMES; mouth++) {
+                    render(g, index(color, dir, mouth) * size, COLORS[color], DIRECTIONS[dir], mouth == 1);
+                }
+            }
+        }
+        g.dispose();
+    }
+
+    private static int index(int color, int dir, int mouth) {
+        return (color * DIRECTIONS.length + dir) * MOUTH_FRAMES + mouth;
+    }
+
+    private void render(Graphics g, int x, Color color, char direction, boolean mouthOpen) {
+        int startAngle = 0;
+        int arcAngle = 360;
+        if (mouthOpen) {
+            switch (direction) {
+                case 'U': startAngle = 135; arcAngle = 270; break;
+                case 'D': startAngle = 315; arcAngle = 270; break;
+                case 'L': startAngle = 225; arcAngle = 270; break;
+                case 'R': startAngle = 45; arcAngle = 270; break;
+            }
+        }
+        g.setColor(color);
+        g.fillArc(x, 0, size, size, startAngle, arcAngle);
+
+        // Eye
+        g.setColor(Color.BLACK);
+        int eyeSize = size / 8;
+        int eyeX = x + size / 2;
+        int eyeY = size / 4;
+        switch (direction) {
+            case 'U': eyeX -= eyeSize / 2; break;
+            case 'D': eyeX -= eyeSize / 2; eyeY = size / 2; break;
+            case 'L': eyeX = x + size / 4; eyeY -= eyeSize / 2; break;
+            case 'R': eyeX = x + size * 3 / 4 - eyeSize; eyeY -= eyeSize / 2; break;
+        }
+        g.fillOval(eyeX, eyeY, eyeSize, eyeSize);
+    }
+
+    void draw(Graphics g, int x, int y, char direction, boolean poweredUp, boolean mouthOpen) {
+        int sx = index(poweredUp ? 1 : 0, ActorStore.directionIndex(direction), mouthOpen ? 1 : 0) * size;
+        g.drawImage(strip, x, y, x + size, y + size, sx, 0, sx + size, size, null);
+    }
+}
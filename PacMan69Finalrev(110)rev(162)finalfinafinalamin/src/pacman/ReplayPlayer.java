@@ -0,0 +1,149 @@
+package pacman;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Re-simulates recorded games headless, as fast as possible, and checks that
+// each one ends with the recorded tick count, score, status and state hash.
+// Used to reproduce bug reports and as a regression check (and timing run)
+// for changes to the game rules.
+//
+//   java -cp PacMan.jar pacman.ReplayPlayer [--repeat 10] <file or directory>...
+//
+// Exits with status 1 if any replay no longer matches.
+public class ReplayPlayer {
+    // A recording as read from disk
+    static class Replay {
+        long seed;
+        int startLevel;
+        GhostScheduler.Mode scheduling;
+        long[] inputTicks;
+        char[] inputDirections;
+        long ticks;
+        int score;
+        GameWorld.Status status;
+        long stateHash;
+    }
+
+    static Replay read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != ReplayRecorder.MAGIC) {
+                throw new IOException("Not a replay file: " + file);
+            }
+            short version = in.readShort();
+            if (version != ReplayRecorder.VERSION) {
+                throw new IOException("Unsupported replay version " + version + ": " + file);
+            }
+
+            Replay replay = new Replay();
+            replay.seed = in.readLong();
+            replay.startLevel = in.readByte();
+            replay.scheduling = GhostScheduler.Mode.values()[in.readByte()];
+            int inputCount = in.readInt();
+            replay.inputTicks = new long[inputCount];
+            replay.inputDirections = new char[inputCount];
+            long tick = 0;
+            for (int i = 0; i < inputCount; i++) {
+                long value = Varints.read(in);
+                tick += value >>> 2;
+                replay.inputTicks[i] = tick;
+                replay.inputDirections[i] = ReplayRecorder.direction((int) (value & 3));
+            }
+            replay.ticks = in.readLong();
+            replay.score = in.readInt();
+            replay.status = GameWorld.Status.values()[in.readByte()];
+            replay.stateHash = in.readLong();
+            return replay;
+        }
+    }
+
+    // Plays the recording back and returns the world in its final state. A new
+    // world starts at tick 0, so its tick count is the replay tick.
+    static GameWorld play(Replay replay) {
+        GameWorld world = new GameWorld(replay.seed);
+        world.setGhostScheduling(replay.scheduling);
+        world.setLevelDifficulty(replay.startLevel);
+        world.restart(replay.seed);
+
+        int next = 0;
+        int inputCount = replay.inputTicks.length;
+        while (world.getTickCount() < replay.ticks) {
+            long tick = world.getTickCount();
+            while (next < inputCount && replay.inputTicks[next] == tick) {
+                world.setPacmanDirection(replay.inputDirections[next++]);
+            }
+            GameWorld.Status status = world.tick();
+            if (status == GameWorld.Status.GAME_OVER || status == GameWorld.Status.GAME_WIN) break;
+        }
+        // Inputs given after the last tick (a game abandoned mid-level)
+        while (next < inputCount) {
+            world.setPacmanDirection(replay.inputDirections[next++]);
+        }
+        return world;
+    }
+
+    static boolean matches(Replay replay, GameWorld world) {
+        return world.getTickCount() == replay.ticks
+            && world.getScore() == replay.score
+            && world.getStatus() == replay.status
+            && world.stateHash() == replay.stateHash;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int repeat = 1;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--repeat") && i + 1 < args.length) {
+                repeat = Math.max(1, Integer.parseInt(args[++i]));
+            } else {
+                Path path = Paths.get(args[i]);
+                if (Files.isDirectory(path)) {
+                    try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*" + ReplayRecorder.EXTENSION)) {
+                        for (Path file : dir) {
+                            files.add(file);
+                        }
+                    }
+                } else {
+                    files.add(path);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: ReplayPlayer [--repeat n] <file or directory>...");
+            return;
+        }
+        Collections.sort(files);
+
+        int failures = 0;
+        long totalTicks = 0;
+        long totalNanos = 0;
+        for (Path file : files) {
+            Replay replay = read(file);
+            GameWorld world = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < repeat; i++) {
+                world = play(replay);
+            }
+            long nanos = System.nanoTime() - start;
+            totalNanos += nanos;
+            totalTicks += replay.ticks * repeat;
+
+            boolean ok = matches(replay, world);
+            if (!ok) failures++;
+            System.out.printf("%-6s %s: %d ticks, score %d, %s (recorded %d ticks, score %d, %s)%s%n",
+                ok ? "OK" : "FAILED", file.getFileName(),
+                world.getTickCount(), world.getScore(), world.getStatus(),
+                replay.ticks, replay.score, replay.status,
+                ok ? "" : world.stateHash() != replay.stateHash ? ", state hash differs" : "");
+        }
+
+        double seconds = totalNanos / 1e9;
+        System.out.printf("%d replays, %d failed, %d ticks in %.3f s (%.0f ticks/s)%n",
+            files.size(), failures, totalTicks, seconds, totalTicks / seconds);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
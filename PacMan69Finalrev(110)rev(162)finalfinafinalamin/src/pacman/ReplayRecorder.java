@@ -0,0 +1,88 @@
+package pacman;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Records one game as its seed, starting level and the direction inputs given
+// to the world, so ReplayPlayer can re-simulate it tick for tick. Turned on by
+// starting the game with -Dpacman.replay.dir=<directory>.
+//
+// File layout (all big-endian, as written by DataOutputStream):
+//   int MAGIC, short VERSION, long seed, byte start level, byte ghost scheduling,
+//   int input count, then per input one varint of (tick delta << 2 | direction),
+//   long ticks played, int final score, byte final status, long state hash
+class ReplayRecorder {
+    static final int MAGIC = 0x504D5250; // "PMRP"
+    static final short VERSION = 2;
+    static final String EXTENSION = ".pmr";
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final GameWorld world;
+    private final long seed;
+    private final int startLevel;
+    private final GhostScheduler.Mode scheduling;
+    private final long startTick;
+    private final ByteArrayOutputStream inputs = new ByteArrayOutputStream();
+    private int inputCount;
+    private long lastInputTick;
+
+    // Call right after world.restart(seed)
+    ReplayRecorder(GameWorld world, long seed) {
+        this.world = world;
+        this.seed = seed;
+        this.startLevel = world.getCurrentLevel();
+        this.scheduling = world.getGhostScheduling();
+        this.startTick = world.getTickCount();
+    }
+
+    // Call with every direction passed to world.setPacmanDirection()
+    void input(char direction) {
+        long tick = world.getTickCount() - startTick;
+        Varints.write(inputs, ((tick - lastInputTick) << 2) | directionIndex(direction));
+        lastInputTick = tick;
+        inputCount++;
+    }
+
+    // Name of the file to save the recording in: the time now and the seed
+    String fileName() {
+        return "replay-" + LocalDateTime.now().format(FILE_TIME) + "-" + Long.toHexString(seed) + EXTENSION;
+    }
+
+    // The recording as file contents, with the world's current state as the
+    // expected result; ReplayWriter puts it on disk
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + inputs.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(seed);
+            out.writeByte(startLevel);
+            out.writeByte(scheduling.ordinal());
+            out.writeInt(inputCount);
+            inputs.writeTo(out);
+            out.writeLong(world.getTickCount() - startTick);
+            out.writeInt(world.getScore());
+            out.writeByte(world.getStatus().ordinal());
+            out.writeLong(world.stateHash());
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static int directionIndex(char direction) {
+        switch (direction) {
+            case 'U': return 0;
+            case 'D': return 1;
+            case 'L': return 2;
+            default: return 3;
+        }
+    }
+
+    static char direction(int index) {
+        return "UDLR".charAt(index);
+    }
+}
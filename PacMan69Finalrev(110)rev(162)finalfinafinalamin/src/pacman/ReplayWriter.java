@@ -0,0 +1,71 @@
+package pacman;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+// Saves finished replays to a directory. submit() only serialises the
+// recording in memory and queues it; a background thread writes the files,
+// so the game loop never waits on I/O when a game ends. Whatever is still
+// queued is written before the game exits.
+class ReplayWriter {
+    // A recording on its way to disk
+    private static class Recording {
+        final String fileName;
+        final byte[] bytes;
+
+        Recording(String fileName, byte[] bytes) {
+            this.fileName = fileName;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final Recording CLOSE = new Recording(null, null);
+
+    private final Path directory;
+    private final BlockingQueue<Recording> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    ReplayWriter(Path directory) {
+        this.directory = directory;
+        writer = new Thread(this::write, "replay-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    // Non-blocking; the world's current state is recorded as the result
+    void submit(ReplayRecorder replay) {
+        pending.offer(new Recording(replay.fileName(), replay.toBytes()));
+    }
+
+    // Writes out everything submitted so far and stops the writer
+    void close() {
+        if (!writer.isAlive()) return;
+        pending.offer(CLOSE);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        while (true) {
+            Recording recording;
+            try {
+                recording = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (recording == CLOSE) return;
+            try {
+                Files.createDirectories(directory);
+                Path file = Files.write(directory.resolve(recording.fileName), recording.bytes);
+                System.out.println("Saved replay " + file);
+            } catch (IOException e) {
+                System.out.println("Error saving replay: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package pacman;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Uniform grid over the maze for finding what is near a point. Entities are
+// ids (GameWorld numbers ghosts first, then pickups), each filed under the
+// cell of its top-left corner and refiled with update() after it moves; since
+// none is bigger than a cell, a query only has to look at the cells it covers
+// plus one row and column up and left. A query therefore costs what is
+// nearby, however many ghosts and pickups the maze holds.
+class SpatialHash {
+    private final int cellSize;
+    private final int rows;
+    private final int columns;
+    private final int[][] cells;
+    private final int[] counts;
+    private int[] cellOf; // cell of each id, -1 when not filed
+
+    SpatialHash(int width, int height, int cellSize, int capacity) {
+        this.cellSize = cellSize;
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.cells = new int[rows * columns][];
+        this.counts = new int[rows * columns];
+        this.cellOf = new int[Math.max(capacity, 1)];
+        Arrays.fill(cellOf, -1);
+    }
+
+    void insert(int id, int x, int y) {
+        if (id >= cellOf.length) {
+            int oldLength = cellOf.length;
+            cellOf = Arrays.copyOf(cellOf, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(cellOf, oldLength, cellOf.length, -1);
+        }
+        remove(id);
+        cellOf[id] = cellAt(x, y);
+        add(cellOf[id], id);
+    }
+
+    void remove(int id) {
+        if (id >= cellOf.length || cellOf[id] < 0) return;
+        removeFrom(cellOf[id], id);
+        cellOf[id] = -1;
+    }
+
+    // Refiles an entity that has moved; cheap when it stayed in its cell
+    void update(int id, int x, int y) {
+        int cell = cellAt(x, y);
+        if (cell != cellOf[id]) {
+            removeFrom(cellOf[id], id);
+            add(cell, id);
+            cellOf[id] = cell;
+        }
+    }
+
+    // Sets the bit of every entity that may overlap the area; callers still
+    // do the exact collision test, and read the hits back in id order
+    void query(int x, int y, int width, int height, BitSet out) {
+        int firstRow = clamp(Math.floorDiv(y - cellSize, cellSize), rows);
+        int lastRow = clamp(Math.floorDiv(y + height - 1, cellSize), rows);
+        int firstCol = clamp(Math.floorDiv(x - cellSize, cellSize), columns);
+        int lastCol = clamp(Math.floorDiv(x + width - 1, cellSize), columns);
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstCol; c <= lastCol; c++) {
+                int cell = r * columns + c;
+                int[] ids = cells[cell];
+                for (int i = 0; i < counts[cell]; i++) {
+                    out.set(ids[i]);
+                }
+            }
+        }
+    }
+
+    // Entities off the maze (tunnels) are kept in the nearest edge cell
+    private int cellAt(int x, int y) {
+        int r = clamp(Math.floorDiv(y, cellSize), rows);
+        int c = clamp(Math.floorDiv(x, cellSize), columns);
+        return r * columns + c;
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(index, size - 1));
+    }
+
+    private void add(int cell, int id) {
+        int[] ids = cells[cell];
+        if (ids == null) {
+            ids = cells[cell] = new int[4];
+        } else if (counts[cell] == ids.length) {
+            ids = cells[cell] = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[counts[cell]++] = id;
+    }
+
+    private void removeFrom(int cell, int id) {
+        int[] ids = cells[cell];
+        int last = counts[cell] - 1;
+        for (int i = 0; i <= last; i++) {
+            if (ids[i] == id) {
+                ids[i] = ids[last];
+                counts[cell] = last;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package pacman;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+// All sprites packed into one image, each already scaled to the size it is
+// drawn at. Drawing a sprite copies its rectangle 1:1, so the blit never
+// scales and stays on the fast path, and with a screen-compatible image Java2D
+// keeps the whole atlas cached in video memory. Sprites that failed to load
+// are missing; draw() reports that so callers can fall back to shapes.
+class SpriteAtlas {
+    enum Sprite {
+        RED_GHOST("redGhost.png"),
+        BLUE_GHOST("blueGhost.png"),
+        PINK_GHOST("pinkGhost.png"),
+        ORANGE_GHOST("orangeGhost.png"),
+        SCARED_GHOST("scaredGhost.png"),
+        CHERRY("cherry.png"),
+        POWER_FOOD("powerFood.png"),
+        WALL("wall.png"),
+        HEART("heart.png");
+
+        final String resource;
+
+        Sprite(String file) {
+            this.resource = "/pacman/" + file;
+        }
+    }
+
+    private static final int MAX_WIDTH = 512;
+    private static final int GAP = 1;
+
+    private final BufferedImage image;
+    // x, y, width, height of each sprite; width 0 when it is missing
+    private final int[] regions = new int[Sprite.values().length * 4];
+
+    // Packs the images in shelves (rows), tallest first. The images must
+    // already have their drawing size.
+    SpriteAtlas(Map<Sprite, BufferedImage> sprites, GraphicsConfiguration gc) {
+        List<Sprite> order = new ArrayList<>(sprites.keySet());
+        order.sort((a, b) -> sprites.get(b).getHeight() - sprites.get(a).getHeight());
+
+        int x = 0, y = 0, shelfHeight = 0, width = 1;
+        for (Sprite sprite : order) {
+            BufferedImage img = sprites.get(sprite);
+            if (x > 0 && x + img.getWidth() > MAX_WIDTH) {
+                x = 0;
+                y += shelfHeight + GAP;
+                shelfHeight = 0;
+            }
+            int i = sprite.ordinal() * 4;
+            regions[i] = x;
+            regions[i + 1] = y;
+            regions[i + 2] = img.getWidth();
+            regions[i + 3] = img.getHeight();
+            x += img.getWidth() + GAP;
+            width = Math.max(width, x);
+            shelfHeight = Math.max(shelfHeight, img.getHeight());
+        }
+        int height = Math.max(1, y + shelfHeight);
+
+        image = gc != null
+            ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+            : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        for (Sprite sprite : order) {
+            int i = sprite.ordinal() * 4;
+            g.drawImage(sprites.get(sprite), regions[i], regions[i + 1], null);
+        }
+        g.dispose();
+    }
+
+    boolean has(Sprite sprite) {
+        return regions[sprite.ordinal() * 4 + 2] > 0;
+    }
+
+    // Draws the sprite with its top-left corner at x, y; false if it is missing
+    boolean draw(Graphics g, Sprite sprite, int x, int y) {
+        int i = sprite.ordinal() * 4;
+        int width = regions[i + 2];
+        if (width == 0) return false;
+        int height = regions[i + 3];
+        int sx = regions[i], sy = regions[i + 1];
+        g.drawImage(image, x, y, x + width, y + height, sx, sy, sx + width, sy + height, null);
+        return true;
+    }
+}
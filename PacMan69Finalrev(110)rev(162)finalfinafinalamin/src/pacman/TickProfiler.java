@@ -0,0 +1,321 @@
+package pacman;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Where frame time goes. The game thread times each phase of a tick (the
+// world marks them, see GameWorld.setProfiler), the whole tick, painting,
+// showing a frame (active rendering only), the time from a key press to the
+// first frame on screen that shows it and the gap between updates; the audio
+// thread reports decode time and buffer underruns. Samples go into lock-free histograms, so any thread can
+// record without blocking the others.
+//
+// Every second the current window is summarised (p50/p99/max per phase plus
+// the GC time spent in it) for the on-screen overlay. With
+// -Dpacman.profile.file=<file> the windows are also merged and appended to
+// that file every -Dpacman.profile.interval seconds (default 10) by a
+// background thread.
+class TickProfiler {
+    enum Phase {
+        SPAWN("spawn"),
+        PACMAN("pac-man"),
+        GHOST_AI("ghost AI"),
+        GHOSTS("ghost move"),
+        COLLISIONS("collisions"),
+        FOOD("food"),
+        TICK("tick"),
+        PAINT("paint"),
+        PRESENT("present"),
+        INPUT_LATENCY("key latency"),
+        FRAME("frame gap"),
+        AUDIO_DECODE("audio decode");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    // Phases the world marks inside a tick; the rest are recorded directly
+    private static final int TICK_PHASES = Phase.TICK.ordinal();
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Log-linear histogram of nanosecond samples: values below 16 get a
+    // bucket each, larger ones 8 buckets per power of two (within 12.5%)
+    static class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int LINEAR = 16;
+        private static final int BUCKETS = LINEAR + (64 - 4) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts.incrementAndGet(bucketOf(nanos));
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // Lost a race with another thread; retry against its maximum
+            }
+        }
+
+        private static int bucketOf(long nanos) {
+            if (nanos < LINEAR) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        // Largest value that falls in the bucket
+        private static long upperBound(int bucket) {
+            if (bucket < LINEAR) return bucket;
+            int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+            int sub = (bucket - LINEAR) % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+        }
+
+        long count() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // Value below which the given fraction of samples fall, 0 when empty
+        long percentile(double fraction) {
+            long total = count();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void addTo(Histogram other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = counts.get(i);
+                if (n != 0) other.counts.addAndGet(i, n);
+            }
+            long m = max.get();
+            long current;
+            while (m > (current = other.max.get()) && !other.max.compareAndSet(current, m)) {
+                // Retry
+            }
+        }
+    }
+
+    // One histogram per phase plus the counters, for a stretch of time
+    private static class Window {
+        final Histogram[] phases = new Histogram[PHASES.length];
+        final AtomicLong underruns = new AtomicLong();
+        long gcCount;
+        long gcMillis;
+
+        Window() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new Histogram();
+            }
+        }
+
+        void addTo(Window other) {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i].addTo(other.phases[i]);
+            }
+            other.underruns.addAndGet(underruns.get());
+            other.gcCount += gcCount;
+            other.gcMillis += gcMillis;
+        }
+    }
+
+    private static final String[] EMPTY = new String[0];
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private volatile Window current = new Window();
+    private volatile String[] summary = EMPTY;
+
+    // Per-tick phase totals; only the game thread touches these
+    private final long[] tickNanos = new long[TICK_PHASES];
+    private long tickStart;
+    private long lastMark;
+    private long lastFrame;
+
+    // Rolling windows, on the game thread
+    private long windowStart = System.nanoTime();
+    private long lastGcCount = gcCount();
+    private long lastGcMillis = gcMillis();
+
+    // File dump
+    private final Path dumpFile;
+    private final long dumpNanos;
+    private Window dumpWindow;
+    private long dumpStart = windowStart;
+    private final BlockingQueue<String> pending = new LinkedBlockingQueue<>();
+
+    TickProfiler() {
+        this(dumpFile(), Long.getLong("pacman.profile.interval", 10));
+    }
+
+    TickProfiler(Path dumpFile, long dumpSeconds) {
+        this.dumpFile = dumpFile;
+        this.dumpNanos = TimeUnit.SECONDS.toNanos(Math.max(1, dumpSeconds));
+        if (dumpFile != null) {
+            dumpWindow = new Window();
+            Thread writer = new Thread(this::write, "profile-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private static Path dumpFile() {
+        String file = System.getProperty("pacman.profile.file");
+        return file != null ? Paths.get(file) : null;
+    }
+
+    // Tick phases, called by the world in order: each mark charges the time
+    // since the previous one to its phase
+    void beginTick() {
+        tickStart = lastMark = System.nanoTime();
+    }
+
+    void mark(Phase phase) {
+        long now = System.nanoTime();
+        tickNanos[phase.ordinal()] += now - lastMark;
+        lastMark = now;
+    }
+
+    // Records one sample per tick phase, even a phase the tick skipped, so
+    // every phase has a sample per tick and percentiles are per tick
+    void endTick() {
+        Window window = current;
+        for (int i = 0; i < TICK_PHASES; i++) {
+            window.phases[i].record(tickNanos[i]);
+            tickNanos[i] = 0;
+        }
+        window.phases[Phase.TICK.ordinal()].record(System.nanoTime() - tickStart);
+    }
+
+    void record(Phase phase, long nanos) {
+        current.phases[phase.ordinal()].record(nanos);
+    }
+
+    void underrun() {
+        current.underruns.incrementAndGet();
+    }
+
+    // Called on every game loop event: records the gap since the last one and
+    // closes the window once a second has passed
+    void frame() {
+        long now = System.nanoTime();
+        if (lastFrame != 0) {
+            record(Phase.FRAME, now - lastFrame);
+        }
+        lastFrame = now;
+        if (now - windowStart >= WINDOW_NANOS) {
+            roll(now);
+        }
+    }
+
+    private void roll(long now) {
+        Window window = current;
+        current = new Window();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        window.gcCount = gcCount - lastGcCount;
+        window.gcMillis = gcMillis - lastGcMillis;
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+        windowStart = now;
+        summary = summarise(window);
+
+        if (dumpWindow != null) {
+            window.addTo(dumpWindow);
+            if (now - dumpStart >= dumpNanos) {
+                String[] lines = summarise(dumpWindow);
+                StringBuilder text = new StringBuilder();
+                text.append(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).format(TIME_FORMAT)).append('\n');
+                for (String line : lines) {
+                    text.append("  ").append(line).append('\n');
+                }
+                pending.offer(text.toString());
+                dumpWindow = new Window();
+                dumpStart = now;
+            }
+        }
+    }
+
+    // Lines for the overlay: the last full second
+    String[] summary() {
+        return summary;
+    }
+
+    private static String[] summarise(Window window) {
+        String[] lines = new String[PHASES.length + 1];
+        for (Phase phase : PHASES) {
+            Histogram h = window.phases[phase.ordinal()];
+            lines[phase.ordinal()] = String.format("%-12s p50 %7.3f  p99 %7.3f  max %7.3f ms  (%d)",
+                phase.label, millis(h.percentile(0.50)), millis(h.percentile(0.99)),
+                millis(h.max()), h.count());
+        }
+        lines[PHASES.length] = String.format("gc %d collections %d ms, audio underruns %d",
+            window.gcCount, window.gcMillis, window.underruns.get());
+        return lines;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private void write() {
+        while (true) {
+            String text;
+            try {
+                text = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try (Writer out = Files.newBufferedWriter(dumpFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(text);
+            } catch (IOException e) {
+                System.out.println("Error writing profile: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package pacman;
+
+// Packed wall occupancy for the tile map (one bit per tile), built once per
+// loadMap(). A moving block only has to look at the 1-4 tiles it overlaps,
+// so wall checks no longer depend on how many walls the maze has.
+class TileGrid {
+    private final int rows;
+    private final int columns;
+    private final int tileSize;
+    private final int padding;
+    private final long[] walls;
+
+    TileGrid(int rows, int columns, int tileSize, int padding) {
+        this.rows = rows;
+        this.columns = columns;
+        this.tileSize = tileSize;
+        this.padding = padding;
+        this.walls = new long[(rows * columns + 63) >>> 6];
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getTileSize() {
+        return tileSize;
+    }
+
+    void setWall(int row, int col) {
+        int index = row * columns + col;
+        walls[index >>> 6] |= 1L << index;
+    }
+
+    boolean isWall(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= columns) {
+            return false;
+        }
+        int index = row * columns + col;
+        return (walls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // Same result as running collision(block, wall) against every wall tile:
+    // a tile at column c is hit when x + 2p - tileSize < c * tileSize < x + width - 2p.
+    boolean collidesWithWall(int x, int y, int width, int height) {
+        int inset = 2 * padding;
+        int firstCol = Math.floorDiv(x + inset - tileSize, tileSize) + 1;
+        int lastCol = Math.floorDiv(x + width - inset - 1, tileSize);
+        int firstRow = Math.floorDiv(y + inset - tileSize, tileSize) + 1;
+        int lastRow = Math.floorDiv(y + height - inset - 1, tileSize);
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstCol; c <= lastCol; c++) {
+                if (isWall(r, c)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
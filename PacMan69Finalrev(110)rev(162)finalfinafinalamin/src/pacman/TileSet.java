@@ -0,0 +1,55 @@
+package pacman;
+
+import java.util.Random;
+
+// Set of tile indexes with O(1) add, remove, contains and uniform random pick.
+// Members are packed at the front of an array; each tile remembers its slot so
+// a removal can swap the last member into the hole.
+class TileSet {
+    private final int[] members;
+    private final int[] slots; // slot + 1 for members, 0 otherwise
+    private int size;
+
+    TileSet(int tileCount) {
+        members = new int[tileCount];
+        slots = new int[tileCount];
+    }
+
+    boolean add(int tile) {
+        if (slots[tile] != 0) {
+            return false;
+        }
+        members[size] = tile;
+        slots[tile] = ++size;
+        return true;
+    }
+
+    boolean remove(int tile) {
+        int slot = slots[tile] - 1;
+        if (slot < 0) {
+            return false;
+        }
+        int last = members[--size];
+        members[slot] = last;
+        slots[last] = slot + 1;
+        slots[tile] = 0;
+        return true;
+    }
+
+    boolean contains(int tile) {
+        return slots[tile] != 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Random member, or -1 when empty
+    int random(Random random) {
+        return size == 0 ? -1 : members[random.nextInt(size)];
+    }
+}
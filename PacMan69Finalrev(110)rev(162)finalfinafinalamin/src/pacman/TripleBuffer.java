@@ -0,0 +1,47 @@
+package pacman;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Three reusable instances handed from one writer thread to one reader
+// thread without locks or allocation. The writer fills back() and
+// publish()es it; front() gives the reader the newest published instance,
+// which the writer leaves alone until the reader asks again. Publishing
+// swaps the back instance with the middle one; the reader takes the middle
+// one only when it is newer than its own.
+final class TripleBuffer<T> {
+    private static final int INDEX = 3;
+    private static final int FRESH = 4; // the middle instance has not been read
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 2;  // writer only
+    private int front = 0; // reader only
+
+    TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    // Writer side: the instance to fill next
+    @SuppressWarnings("unchecked")
+    T back() {
+        return (T) slots[back];
+    }
+
+    // Writer side: makes back() the newest instance and hands out another
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // Reader side: the newest published instance. It stays valid until the
+    // next call.
+    @SuppressWarnings("unchecked")
+    T front() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return (T) slots[front];
+    }
+}
@@ -0,0 +1,81 @@
+package pacman2;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.function.Consumer;
+
+// Active rendering: the game thread draws each frame into a BufferStrategy
+// on a Canvas and shows it itself, flipping pages where it can and copying
+// otherwise. The same class as pacman.ActiveRenderer in the main game, which
+// explains the details; the two projects share no code, so keep them in step.
+class ActiveRenderer {
+    private static final int BUFFERS = 2;
+
+    private final Canvas canvas = new Canvas();
+    private BufferStrategy strategy;
+
+    ActiveRenderer(int width, int height) {
+        canvas.setPreferredSize(new Dimension(width, height));
+        canvas.setBackground(Color.BLACK);
+        // Nothing but present() draws on it; key events stay with the panel
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(false);
+    }
+
+    Canvas canvas() {
+        return canvas;
+    }
+
+    // Whether show() flips buffers rather than copying; known once present()
+    // first ran, false before
+    boolean pageFlipping() {
+        return strategy != null && strategy.getCapabilities().isPageFlipping();
+    }
+
+    // Draws a frame with painter and shows it. Returns the nanoseconds spent
+    // showing it (waiting for the flip or the copy), or -1 if the canvas is
+    // not on screen.
+    long present(Consumer<Graphics> painter) {
+        if (!canvas.isDisplayable()) return -1;
+        try {
+            if (strategy == null) {
+                strategy = createStrategy();
+            }
+            long shown = 0;
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        g.setColor(Color.BLACK);
+                        g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                        painter.accept(g);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                long start = System.nanoTime();
+                strategy.show();
+                // Push the frame out now rather than when the window system
+                // gets round to flushing (X11 queues requests)
+                Toolkit.getDefaultToolkit().sync();
+                shown += System.nanoTime() - start;
+            } while (strategy.contentsLost());
+            return shown;
+        } catch (IllegalStateException e) {
+            // The window is closing and the canvas lost its peer
+            strategy = null;
+            return -1;
+        }
+    }
+
+    private BufferStrategy createStrategy() {
+        BufferCapabilities flipping = new BufferCapabilities(
+            new ImageCapabilities(true), new ImageCapabilities(true), BufferCapabilities.FlipContents.UNDEFINED);
+        try {
+            canvas.createBufferStrategy(BUFFERS, flipping);
+        } catch (AWTException e) {
+            canvas.createBufferStrategy(BUFFERS);
+        }
+        return canvas.getBufferStrategy();
+    }
+}
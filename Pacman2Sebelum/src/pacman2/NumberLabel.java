@@ -0,0 +1,27 @@
+package pacman2;
+
+// A "prefix + number + suffix" HUD label that only builds a new String when the
+// number changes, so drawing it every frame allocates nothing.
+class NumberLabel {
+    private final String prefix;
+    private final String suffix;
+    private int value;
+    private String text;
+
+    NumberLabel(String prefix) {
+        this(prefix, "");
+    }
+
+    NumberLabel(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    String of(int newValue) {
+        if (text == null || newValue != value) {
+            value = newValue;
+            text = prefix + newValue + suffix;
+        }
+        return text;
+    }
+}
@@ -3,10 +3,18 @@ package pacman2;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.HashSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class PacMan extends JPanel implements Runnable, KeyListener {
     // Game states
@@ -22,19 +30,64 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     
     // Game settings
     public final int TILE_SIZE = 32;
-    public int MAX_COL = 19;
-    public int MAX_ROW = 21;
+    private static final String DEFAULT_MAZE = "default.maze";
+    public int MAX_COL;
+    public int MAX_ROW;
     public int SCREEN_WIDTH, SCREEN_HEIGHT;
     
     // Game components
     private Thread gameThread;
     private final int FPS = 60;
+    private final long UPDATE_INTERVAL = 1_000_000_000L / FPS;
+    private final int MAX_CATCH_UP_STEPS = 5;
     
+    // Loop timing; written by the game thread, read when painting
+    private long lastUpdateTime;
+    private volatile int measuredUps, measuredFps, measuredLagMillis;
+    private final AtomicInteger framesPainted = new AtomicInteger();
+
+    // The EDT repaints on its own timer at the display's refresh rate, or at
+    // -Dpacman2.render.fps, so paints fall in between updates. With
+    // -Dpacman2.render=active the game thread instead draws and shows every
+    // Frame itself through an ActiveRenderer.
+    private static final int RENDER_FPS = Math.max(1, Integer.getInteger("pacman2.render.fps", displayRefreshRate()));
+    private static final boolean ACTIVE_RENDERING =
+        "active".equalsIgnoreCase(System.getProperty("pacman2.render")) && !GraphicsEnvironment.isHeadless();
+    private javax.swing.Timer renderLoop;
+    private ActiveRenderer activeRenderer;
+
+    // Key to screen latency: when the oldest key not yet handled was pressed
+    // (0 if none), the sequence of the last Frame that reached the screen and
+    // the worst latency in the current stats second
+    private final AtomicLong keyPressedAt = new AtomicLong();
+    private volatile long shownSequence;
+    private final AtomicLong worstInputLag = new AtomicLong();
+
+    // Only the game thread changes the game state. Keys pressed on the EDT
+    // wait in pendingKeys for it, and the EDT paints from the latest Frame.
+    private final ConcurrentLinkedQueue<Integer> pendingKeys = new ConcurrentLinkedQueue<>();
+
+    // Frames are reused, three of them: the game thread fills backFrame, the
+    // painting thread draws frontFrame, and the one in between is handed over
+    // through readyFrame, its index plus FRESH_FRAME until the painting
+    // thread takes it. published is the last Frame handed over.
+    private static final int FRESH_FRAME = 4;
+    private final Frame[] frames = { new Frame(), new Frame(), new Frame() };
+    private final AtomicInteger readyFrame = new AtomicInteger(1);
+    private int backFrame = 2;  // game thread only
+    private int frontFrame = 0; // painting thread only
+    private Frame published;
+    
+    // Directions of Pac-Man and the ghosts; ints so the per-tick checks are
+    // plain compares rather than string switches
+    static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+
     // Pac-Man properties
     public int pacManX, pacManY;
+    public int prevPacManX, prevPacManY;
     public int initialPacManX, initialPacManY;
     public int pacManSpeed;
-    public String pacManDirection;
+    public int pacManDirection;
     public Rectangle pacManSolidArea;
     public int pacManSpriteNum = 1;
     int pacManSpriteCounter = 0;
@@ -46,8 +99,18 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
 
     // Game map and items
     private String[] defaultTileMapLayout;
+    // Rows with an opening at both side edges; actors leaving the board
+    // there come back in on the other side
+    private boolean[] tunnelRows;
+    // Ghost tiles in the order of the ghosts array
+    private static final String GHOST_TILES = "rbpo";
+    // Speeds set by the maze, -1 when the level's are used
+    private int mazePacManSpeed = -1;
+    private int mazeGhostSpeed = -1;
     private int[][] map;
-    private HashSet<Point> foodLocations;
+    private int mapVersion; // bumped on every change to map
+    // Food tiles left in map; the map itself marks which tiles they are
+    private int foodRemaining;
     
     // Game stats
     private int score = 0;
@@ -61,7 +124,36 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     private final String[] GAME_WIN_OPTIONS = {"Next Level", "Main Menu", "Quit"};
     private final String[] PAUSE_OPTIONS = {"Resume", "Restart", "Main Menu", "Quit"};
     
+    // Fonts, colors and HUD labels are created once and reused by every frame
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 48);
+    private static final Font HEADING_FONT = new Font("Arial", Font.BOLD, 36);
+    private static final Font MENU_FONT = new Font("Arial", Font.BOLD, 32);
+    private static final Font LEVEL_MENU_FONT = new Font("Arial", Font.BOLD, 28);
+    private static final Font SUBTITLE_FONT = new Font("Arial", Font.BOLD, 24);
+    private static final Font HUD_FONT = new Font("Arial", Font.BOLD, 20);
+    private static final Color OVERLAY_COLOR = new Color(0, 0, 0, 180);
+    private static final Color WALL_FILL_COLOR = Color.BLUE.darker();
+    private static final Color WALL_EDGE_COLOR = Color.BLUE.brighter();
+    private final NumberLabel scoreLabel = new NumberLabel("Score: ");
+    private final NumberLabel finalScoreLabel = new NumberLabel("Final Score: ");
+    private final NumberLabel livesLabel = new NumberLabel("Lives: ");
+    private final NumberLabel levelLabel = new NumberLabel("Level: ");
+    private final NumberLabel upsLabel = new NumberLabel("UPS: ");
+    private final NumberLabel fpsLabel = new NumberLabel("FPS: ");
+    private final NumberLabel lagLabel = new NumberLabel("Lag: ", " ms");
+    private static final String RENDER_FLIPPING = "Flip";
+    private static final String RENDER_BLITTING = "Blit";
+    private final Rectangle pacManHitbox = new Rectangle();
+    private final Rectangle ghostHitbox = new Rectangle();
+
+    // Pac-Man (mouth closed, then open towards each direction) and the ghost
+    // of each colour are drawn once; painting a character is then one blit
+    private static final Color[] GHOST_COLORS = {Color.RED, Color.CYAN, Color.PINK, Color.ORANGE};
+    private final BufferedImage[] pacManFrames = new BufferedImage[5];
+    private final BufferedImage[] ghostFrames = new BufferedImage[GHOST_COLORS.length];
+    
     public PacMan() {
+        initializeDefaultMap();
         initializeScreenSize();
         this.setPreferredSize(new Dimension(SCREEN_WIDTH, SCREEN_HEIGHT));
         this.setBackground(Color.BLACK);
@@ -72,8 +164,51 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         pacManSolidArea = new Rectangle(8, 8, TILE_SIZE - 16, TILE_SIZE - 16);
         ghostSolidArea = new Rectangle(8, 8, TILE_SIZE - 16, TILE_SIZE - 16);
         
-        initializeDefaultMap();
         setDefaultValues();
+        renderCharacterFrames();
+        publishFrame(0);
+        if (ACTIVE_RENDERING) {
+            activeRenderer = new ActiveRenderer(SCREEN_WIDTH, SCREEN_HEIGHT);
+            setLayout(new BorderLayout());
+            add(activeRenderer.canvas());
+        }
+    }
+
+    private void renderCharacterFrames() {
+        GraphicsConfiguration gc = GraphicsEnvironment.isHeadless() ? null
+            : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        for (int i = 0; i < pacManFrames.length; i++) {
+            pacManFrames[i] = createFrame(gc);
+            Graphics2D g2 = pacManFrames[i].createGraphics();
+            g2.setColor(Color.YELLOW);
+            switch (i - 1) {
+                case UP:    g2.fillArc(0, 0, TILE_SIZE, TILE_SIZE, 135, 270); break;
+                case DOWN:  g2.fillArc(0, 0, TILE_SIZE, TILE_SIZE, 315, 270); break;
+                case LEFT:  g2.fillArc(0, 0, TILE_SIZE, TILE_SIZE, 225, 270); break;
+                case RIGHT: g2.fillArc(0, 0, TILE_SIZE, TILE_SIZE, 45, 270); break;
+                default:    g2.fillArc(0, 0, TILE_SIZE, TILE_SIZE, 0, 360); break;
+            }
+            g2.dispose();
+        }
+        for (int i = 0; i < ghostFrames.length; i++) {
+            ghostFrames[i] = createFrame(gc);
+            Graphics2D g2 = ghostFrames[i].createGraphics();
+            g2.setColor(GHOST_COLORS[i]);
+            g2.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            g2.setColor(Color.WHITE);
+            g2.fillOval(TILE_SIZE/4, TILE_SIZE/4, TILE_SIZE/4, TILE_SIZE/4);
+            g2.fillOval(TILE_SIZE/2, TILE_SIZE/4, TILE_SIZE/4, TILE_SIZE/4);
+            g2.setColor(Color.BLACK);
+            g2.fillOval(TILE_SIZE/4 + 3, TILE_SIZE/4 + 3, TILE_SIZE/8, TILE_SIZE/8);
+            g2.fillOval(TILE_SIZE/2 + 3, TILE_SIZE/4 + 3, TILE_SIZE/8, TILE_SIZE/8);
+            g2.dispose();
+        }
+    }
+
+    private BufferedImage createFrame(GraphicsConfiguration gc) {
+        return gc != null
+            ? gc.createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.TRANSLUCENT)
+            : new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
     }
     
     private void initializeScreenSize() {
@@ -81,34 +216,155 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         SCREEN_HEIGHT = TILE_SIZE * MAX_ROW;
     }
     
+    private static BufferedReader openDefaultMaze() {
+        InputStream in = PacMan.class.getResourceAsStream(DEFAULT_MAZE);
+        if (in == null) {
+            throw new IllegalStateException("Missing maze resource " + DEFAULT_MAZE);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    // Reads the maze from -Dpacman2.maze or the bundled default.maze and sizes
+    // the board from it. The text format is the main game's: rows of X wall,
+    // space food, O empty, P Pac-Man and r b p o ghosts, ';' comment lines and
+    // "@key value" settings. Of the settings only @pacman-speed and
+    // @ghost-speed mean something here; the chase settings are accepted, but
+    // these ghosts wander instead of chasing. Openings in the left and right
+    // border are tunnels; pacman2 has no tunnels through the top and bottom.
     private void initializeDefaultMap() {
-        defaultTileMapLayout = new String[] {
-            "XXXXXXXXXXXXXXXXXXX",
-            "X        X        X",
-            "X XX XXX X XXX XX X",
-            "X                 X",
-            "X XX X XXXXX X XX X",
-            "X    X       X    X",
-            "XXXX XXXX XXXX XXXX",
-            "OOOX X       X XOOO",
-            "XXXX X XXrXX X XXXX",
-            "O       bpo       O",
-            "XXXX X XXXXX X XXXX",
-            "OOOX X       X XOOO",
-            "XXXX X XXXXX X XXXX",
-            "X        X        X",
-            "X XX XXX X XXX XX X",
-            "X  X     P     X  X",
-            "XX X X XXXXX X X XX",
-            "X    X   X   X    X",
-            "X XXXXXX X XXXXXX X",
-            "X                 X",
-            "XXXXXXXXXXXXXXXXXXX" 
-        };
+        String file = System.getProperty("pacman2.maze");
+        String source = file != null ? file : DEFAULT_MAZE;
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader reader = file != null
+                ? Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)
+                : openDefaultMaze()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(";")) continue; // Comment
+                if (line.startsWith("@")) {
+                    readMazeSetting(line.substring(1).trim(), source);
+                    continue;
+                }
+                rows.add(line);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read maze " + source, e);
+        }
+        // Editors like to leave empty lines at the end
+        while (!rows.isEmpty() && rows.get(rows.size() - 1).isEmpty()) {
+            rows.remove(rows.size() - 1);
+        }
+        checkMaze(rows, source);
+
+        defaultTileMapLayout = rows.toArray(new String[0]);
+        MAX_ROW = rows.size();
+        MAX_COL = rows.get(0).length();
+        tunnelRows = new boolean[MAX_ROW];
+        for (int r = 0; r < MAX_ROW; r++) {
+            tunnelRows[r] = defaultTileMapLayout[r].charAt(0) != 'X';
+        }
+    }
+
+    private void readMazeSetting(String setting, String source) {
+        String[] parts = setting.split("\\s+", 2);
+        if (parts.length != 2) {
+            throw new IllegalStateException(source + ": setting without a value: @" + setting);
+        }
+        try {
+            switch (parts[0]) {
+                case "pacman-speed": mazePacManSpeed = Integer.parseInt(parts[1]); break;
+                case "ghost-speed": mazeGhostSpeed = Integer.parseInt(parts[1]); break;
+                // Checked, so a maze that works in the main game works here
+                case "chase-probability": Double.parseDouble(parts[1]); break;
+                case "chase-range": Integer.parseInt(parts[1]); break;
+                default: throw new IllegalStateException(source + ": unknown setting @" + parts[0]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(source + ": bad value for @" + parts[0] + ": " + parts[1], e);
+        }
+        if (mazePacManSpeed == 0 || mazePacManSpeed < -1 || mazeGhostSpeed == 0 || mazeGhostSpeed < -1) {
+            throw new IllegalStateException(source + ": speeds must be positive");
+        }
+    }
+
+    // Same rules as the main game's mazes, plus the four ghosts this game
+    // always has: one Pac-Man, each ghost once, some food, known tiles only,
+    // and every side opening facing another one
+    private static void checkMaze(List<String> rows, String source) {
+        if (rows.isEmpty() || rows.get(0).isEmpty()) {
+            throw new IllegalStateException(source + ": maze is empty");
+        }
+        int columns = rows.get(0).length();
+        int pacMen = 0;
+        int food = 0;
+        int[] ghostCounts = new int[GHOST_TILES.length()];
+        for (int r = 0; r < rows.size(); r++) {
+            String row = rows.get(r);
+            if (row.length() != columns) {
+                throw new IllegalStateException(source + ": row " + (r + 1) + " is " + row.length()
+                    + " tiles wide, expected " + columns);
+            }
+            for (int c = 0; c < columns; c++) {
+                char tile = row.charAt(c);
+                switch (tile) {
+                    case 'X':
+                    case 'O':
+                        break;
+                    case ' ':
+                        food++;
+                        break;
+                    case 'P':
+                        pacMen++;
+                        break;
+                    default:
+                        int ghost = GHOST_TILES.indexOf(tile);
+                        if (ghost < 0) {
+                            throw new IllegalStateException(source + ": unknown tile '" + tile
+                                + "' at row " + (r + 1) + ", column " + (c + 1));
+                        }
+                        ghostCounts[ghost]++;
+                }
+                boolean border = r == 0 || r == rows.size() - 1;
+                if (border && tile != 'X') {
+                    throw new IllegalStateException(source + ": opening in the top or bottom row at column "
+                        + (c + 1) + "; pacman2 only has side tunnels");
+                }
+            }
+            if ((row.charAt(0) == 'X') != (row.charAt(columns - 1) == 'X')) {
+                throw new IllegalStateException(source + ": tunnel in row " + (r + 1)
+                    + " has no exit on the other side");
+            }
+        }
+        if (pacMen != 1) {
+            throw new IllegalStateException(source + ": maze needs exactly one Pac-Man, found " + pacMen);
+        }
+        for (int i = 0; i < ghostCounts.length; i++) {
+            if (ghostCounts[i] != 1) {
+                throw new IllegalStateException(source + ": maze needs exactly one '" + GHOST_TILES.charAt(i)
+                    + "' ghost, found " + ghostCounts[i]);
+            }
+        }
+        if (food == 0) {
+            throw new IllegalStateException(source + ": maze has no food");
+        }
+    }
+
+    // Whether an actor at this y is in a tunnel row, judged by its centre
+    private boolean inTunnelRow(int y) {
+        int row = (y + TILE_SIZE / 2) / TILE_SIZE;
+        return y >= 0 && row < MAX_ROW && tunnelRows[row];
+    }
+
+    // Speeds the maze sets replace the level's
+    private void applyMazeSpeeds() {
+        if (mazePacManSpeed > 0) pacManSpeed = mazePacManSpeed;
+        if (mazeGhostSpeed > 0) {
+            for (Ghost ghost : ghosts) ghost.speed = mazeGhostSpeed;
+        }
     }
 
     public void setDefaultValues() {
-        foodLocations = new HashSet<>();
+        foodRemaining = 0;
         score = 0;
         lives = 3;
         gameRunning = true;
@@ -141,36 +397,149 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
                 for (Ghost ghost : ghosts) ghost.speed = 4;
                 break;
         }
+        applyMazeSpeeds();
     }
 
     public void startGame() {
         gameThread = new Thread(this);
         gameThread.start();
+        if (activeRenderer == null) {
+            renderLoop = new javax.swing.Timer(1000 / RENDER_FPS, e -> repaint());
+            renderLoop.start();
+        }
     }
 
+    // 60 where the screen doesn't say, or there is none
+    private static int displayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return 60;
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDisplayMode().getRefreshRate();
+        return rate != DisplayMode.REFRESH_RATE_UNKNOWN ? rate : 60;
+    }
+
+    // Fixed-timestep loop: updates run at exactly FPS per second, the thread
+    // parks until the next update is due or a key arrives, and after a stall
+    // it catches up at most MAX_CATCH_UP_STEPS updates before dropping the
+    // backlog. Keys are handled first, then a Frame is published if anything
+    // on screen changed. The render timer paints the latest Frame at any point
+    // between two updates, so painting interpolates between them (see
+    // interpolate()). Rendering actively, the Frame is shown right away.
     @Override
     public void run() {
-        double drawInterval = 1000000000.0 / FPS;
-        double delta = 0;
-        long lastTime = System.nanoTime();
-        long currentTime;
+        long nextUpdate = System.nanoTime();
+        long statsStart = nextUpdate;
+        int updates = 0;
 
         while (gameThread != null) {
-            currentTime = System.nanoTime();
-            delta += (currentTime - lastTime) / drawInterval;
-            lastTime = currentTime;
+            boolean changed = false;
+            Integer code;
+            while ((code = pendingKeys.poll()) != null) {
+                handleKey(code);
+                changed = true;
+            }
+            long inputAt = keyPressedAt.getAndSet(0);
 
-            if (delta >= 1) {
+            long now = System.nanoTime();
+            int steps = 0;
+            while (now - nextUpdate >= 0 && steps < MAX_CATCH_UP_STEPS) {
                 if (gameState == GameState.PLAYING) {
                     update();
                 }
-                repaint();
-                delta--;
+                lastUpdateTime = System.nanoTime();
+                nextUpdate += UPDATE_INTERVAL;
+                steps++;
+                updates++;
+            }
+            if (now - nextUpdate >= 0) {
+                // Too far behind to catch up; continue from now
+                nextUpdate = now + UPDATE_INTERVAL;
+            }
+
+            // The HUD shows the stats live; rendering actively, nothing else
+            // redraws them when no Frame is published
+            boolean statsDue = now - statsStart >= 1_000_000_000L;
+            if (statsDue) {
+                measuredUps = updates;
+                measuredFps = framesPainted.getAndSet(0);
+                measuredLagMillis = (int) ((worstInputLag.getAndSet(0) + 999_999) / 1_000_000);
+                updates = 0;
+                statsStart = now;
+            }
+
+            boolean published = (changed || steps > 0) && publishFrame(inputAt);
+            if (activeRenderer != null && (published || statsDue)) {
+                Frame f = latestFrame();
+                if (activeRenderer.present(g -> paintFrame((Graphics2D) g, f)) >= 0) {
+                    frameShown(f);
+                }
+            }
+
+            long sleep = nextUpdate - System.nanoTime();
+            if (sleep > 0 && pendingKeys.isEmpty()) {
+                LockSupport.parkNanos(this, sleep);
             }
         }
     }
 
+    // Fills the spare Frame and hands it over unless it looks just like the
+    // last one. inputAt: when the oldest key handled since then was pressed,
+    // or 0. A key whose Frame never reached the screen is carried over; a key
+    // that changed nothing on screen is not measured.
+    private boolean publishFrame(long inputAt) {
+        Frame next = frames[backFrame];
+        next.fill(this);
+        if (next.looksLike(published)) return false;
+        if (published != null && published.sequence > shownSequence && published.inputAt != 0) {
+            inputAt = published.inputAt;
+        }
+        next.sequence = published != null ? published.sequence + 1 : 1;
+        next.inputAt = inputAt;
+        backFrame = readyFrame.getAndSet(backFrame | FRESH_FRAME) & 3;
+        published = next;
+        return true;
+    }
+
+    // The newest published Frame, for the painting thread. It is not
+    // refilled until the next call.
+    private Frame latestFrame() {
+        if ((readyFrame.get() & FRESH_FRAME) != 0) {
+            frontFrame = readyFrame.getAndSet(frontFrame) & 3;
+        }
+        return frames[frontFrame];
+    }
+
+    // Records the key to screen latency the first time a Frame is shown.
+    // With Swing painting the frame is still to be copied to the screen.
+    private void frameShown(Frame f) {
+        if (f.sequence == shownSequence) return;
+        shownSequence = f.sequence;
+        if (f.inputAt != 0) {
+            long lag = System.nanoTime() - f.inputAt;
+            worstInputLag.accumulateAndGet(lag, Math::max);
+        }
+    }
+
+    // Position between the previous and the current update, based on how much
+    // of the next update interval has passed. Jumps longer than a tile (tunnel
+    // wraps, resets) are not interpolated. Active rendering shows each update
+    // as soon as it is done, so it draws the current positions.
+    private int interpolate(Frame f, int previous, int current) {
+        if (Math.abs(current - previous) > TILE_SIZE || f.state != GameState.PLAYING || activeRenderer != null) {
+            return current;
+        }
+        float alpha = (float) (System.nanoTime() - f.updateTime) / UPDATE_INTERVAL;
+        alpha = Math.max(0f, Math.min(1f, alpha));
+        return previous + Math.round((current - previous) * alpha);
+    }
+
     public void update() {
+        prevPacManX = pacManX;
+        prevPacManY = pacManY;
+        for (Ghost ghost : ghosts) {
+            ghost.prevX = ghost.x;
+            ghost.prevY = ghost.y;
+        }
+        
         updatePacMan();
         updateGhosts();
         checkCollisionPacManGhosts();
@@ -185,25 +554,25 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         int pacManBottomY = pacManY + pacManSolidArea.y + pacManSolidArea.height;
 
         switch (pacManDirection) {
-            case "up":
+            case UP:
                 if (getTileTypeAt(pacManLeftX, pacManTopY - pacManSpeed) == 1 ||
                     getTileTypeAt(pacManRightX, pacManTopY - pacManSpeed) == 1) {
                     collisionWithWall = true;
                 }
                 break;
-            case "down":
+            case DOWN:
                 if (getTileTypeAt(pacManLeftX, pacManBottomY + pacManSpeed) == 1 ||
                     getTileTypeAt(pacManRightX, pacManBottomY + pacManSpeed) == 1) {
                     collisionWithWall = true;
                 }
                 break;
-            case "left":
+            case LEFT:
                 if (getTileTypeAt(pacManLeftX - pacManSpeed, pacManTopY) == 1 ||
                     getTileTypeAt(pacManLeftX - pacManSpeed, pacManBottomY) == 1) {
                     collisionWithWall = true;
                 }
                 break;
-            case "right":
+            case RIGHT:
                 if (getTileTypeAt(pacManRightX + pacManSpeed, pacManTopY) == 1 ||
                     getTileTypeAt(pacManRightX + pacManSpeed, pacManBottomY) == 1) {
                     collisionWithWall = true;
@@ -213,17 +582,17 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
 
         if (!collisionWithWall) {
             switch (pacManDirection) {
-                case "up":    pacManY -= pacManSpeed; break;
-                case "down":  pacManY += pacManSpeed; break;
-                case "left":  pacManX -= pacManSpeed; break;
-                case "right": pacManX += pacManSpeed; break;
+                case UP:    pacManY -= pacManSpeed; break;
+                case DOWN:  pacManY += pacManSpeed; break;
+                case LEFT:  pacManX -= pacManSpeed; break;
+                case RIGHT: pacManX += pacManSpeed; break;
             }
         }
         
-        if (pacManY == TILE_SIZE * 7 || pacManY == TILE_SIZE * 11) { 
-            if (pacManX + TILE_SIZE <= 0 && pacManDirection.equals("left")) {
+        if (inTunnelRow(pacManY)) {
+            if (pacManX + TILE_SIZE <= 0 && pacManDirection == LEFT) {
                 pacManX = SCREEN_WIDTH;
-            } else if (pacManX >= SCREEN_WIDTH && pacManDirection.equals("right")) {
+            } else if (pacManX >= SCREEN_WIDTH && pacManDirection == RIGHT) {
                 pacManX = -TILE_SIZE;
             }
         }
@@ -263,16 +632,16 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         if (ghost.directionChangeCounter > 60 || willCollideWithWall(ghost.x, ghost.y, ghost.direction)) {
             int attempts = 0;
             boolean foundNewDirection = false;
-            String[] possibleDirections = {"up", "down", "left", "right"};
+            int[] possibleDirections = {UP, DOWN, LEFT, RIGHT};
             
             for (int i = 0; i < possibleDirections.length; i++) {
                 int swapIndex = random.nextInt(possibleDirections.length);
-                String temp = possibleDirections[i];
+                int temp = possibleDirections[i];
                 possibleDirections[i] = possibleDirections[swapIndex];
                 possibleDirections[swapIndex] = temp;
             }
 
-            for (String newDir : possibleDirections) {
+            for (int newDir : possibleDirections) {
                 if (!willCollideWithWall(ghost.x, ghost.y, newDir)) {
                     ghost.direction = newDir;
                     foundNewDirection = true;
@@ -285,31 +654,31 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
 
         if (!willCollideWithWall(ghost.x, ghost.y, ghost.direction)) {
             switch (ghost.direction) {
-                case "up":    ghost.y -= ghost.speed; break;
-                case "down":  ghost.y += ghost.speed; break;
-                case "left":  ghost.x -= ghost.speed; break;
-                case "right": ghost.x += ghost.speed; break;
+                case UP:    ghost.y -= ghost.speed; break;
+                case DOWN:  ghost.y += ghost.speed; break;
+                case LEFT:  ghost.x -= ghost.speed; break;
+                case RIGHT: ghost.x += ghost.speed; break;
             }
         }
         
-        if (ghost.y == TILE_SIZE * 7 || ghost.y == TILE_SIZE * 11) {
-            if (ghost.x + TILE_SIZE <= 0 && ghost.direction.equals("left")) {
+        if (inTunnelRow(ghost.y)) {
+            if (ghost.x + TILE_SIZE <= 0 && ghost.direction == LEFT) {
                 ghost.x = SCREEN_WIDTH;
-            } else if (ghost.x >= SCREEN_WIDTH && ghost.direction.equals("right")) {
+            } else if (ghost.x >= SCREEN_WIDTH && ghost.direction == RIGHT) {
                 ghost.x = -TILE_SIZE;
             }
         }
     }
 
-    private boolean willCollideWithWall(int currentX, int currentY, String testDirection) {
+    private boolean willCollideWithWall(int currentX, int currentY, int testDirection) {
         int testX = currentX;
         int testY = currentY;
         
         switch (testDirection) {
-            case "up":    testY -= ghosts[0].speed; break;
-            case "down":  testY += ghosts[0].speed; break;
-            case "left":  testX -= ghosts[0].speed; break;
-            case "right": testX += ghosts[0].speed; break;
+            case UP:    testY -= ghosts[0].speed; break;
+            case DOWN:  testY += ghosts[0].speed; break;
+            case LEFT:  testX -= ghosts[0].speed; break;
+            case RIGHT: testX += ghosts[0].speed; break;
         }
 
         int ghostLeftX = testX + ghostSolidArea.x;
@@ -326,47 +695,53 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
+        if (activeRenderer != null) return; // the game thread draws on the canvas
+        Frame f = latestFrame();
+        paintFrame((Graphics2D) g, f);
+        frameShown(f);
+        g.dispose();
+    }
 
-        switch (gameState) {
+    private void paintFrame(Graphics2D g2, Frame f) {
+        framesPainted.incrementAndGet();
+
+        switch (f.state) {
             case MAIN_MENU:
-                drawMainMenu(g2);
+                drawMainMenu(g2, f);
                 break;
             case LEVEL_SELECT:
-                drawLevelSelect(g2);
+                drawLevelSelect(g2, f);
                 break;
             case PLAYING:
             case PAUSED:
-                drawGame(g2);
-                if (gameState == GameState.PAUSED) {
-                    drawPauseScreen(g2);
+                drawGame(g2, f);
+                if (f.state == GameState.PAUSED) {
+                    drawPauseScreen(g2, f);
                 }
                 break;
             case GAME_OVER:
-                drawGame(g2);
-                drawGameOverScreen(g2);
+                drawGame(g2, f);
+                drawGameOverScreen(g2, f);
                 break;
             case GAME_WIN:
-                drawGame(g2);
-                drawGameWinScreen(g2);
+                drawGame(g2, f);
+                drawGameWinScreen(g2, f);
                 break;
         }
-
-        g2.dispose();
     }
     
-    private void drawMainMenu(Graphics2D g2) {
+    private void drawMainMenu(Graphics2D g2, Frame f) {
         // Draw title
         g2.setColor(Color.YELLOW);
-        g2.setFont(new Font("Arial", Font.BOLD, 48));
+        g2.setFont(TITLE_FONT);
         String title = "PAC-MAN";
         int titleX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(title)) / 2;
         g2.drawString(title, titleX, SCREEN_HEIGHT / 4);
         
         // Draw menu options
-        g2.setFont(new Font("Arial", Font.BOLD, 32));
+        g2.setFont(MENU_FONT);
         for (int i = 0; i < MAIN_MENU_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == f.selectedOption) {
                 g2.setColor(Color.YELLOW);
             } else {
                 g2.setColor(Color.WHITE);
@@ -377,18 +752,18 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         }
     }
     
-    private void drawLevelSelect(Graphics2D g2) {
+    private void drawLevelSelect(Graphics2D g2, Frame f) {
         // Draw title
         g2.setColor(Color.YELLOW);
-        g2.setFont(new Font("Arial", Font.BOLD, 36));
+        g2.setFont(HEADING_FONT);
         String title = "SELECT LEVEL";
         int titleX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(title)) / 2;
         g2.drawString(title, titleX, SCREEN_HEIGHT / 4);
         
         // Draw level options
-        g2.setFont(new Font("Arial", Font.BOLD, 28));
+        g2.setFont(LEVEL_MENU_FONT);
         for (int i = 0; i < LEVEL_OPTIONS.length; i++) {
-            if (i == selectedLevelOption) {
+            if (i == f.selectedLevel) {
                 g2.setColor(Color.YELLOW);
             } else {
                 g2.setColor(Color.WHITE);
@@ -399,18 +774,18 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         }
     }
     
-    private void drawGame(Graphics2D g2) {
+    private void drawGame(Graphics2D g2, Frame f) {
         // Draw map
         for (int row = 0; row < MAX_ROW; row++) {
             for (int col = 0; col < MAX_COL; col++) {
-                int tileType = map[row][col];
+                int tileType = f.map[row][col];
                 int x = col * TILE_SIZE;
                 int y = row * TILE_SIZE;
 
                 if (tileType == 1) {
-                    g2.setColor(Color.BLUE.darker());
+                    g2.setColor(WALL_FILL_COLOR);
                     g2.fillRect(x, y, TILE_SIZE, TILE_SIZE);
-                    g2.setColor(Color.BLUE.brighter());
+                    g2.setColor(WALL_EDGE_COLOR);
                     g2.drawRect(x, y, TILE_SIZE, TILE_SIZE);
                 } else if (tileType == 2) {
                     g2.setColor(Color.WHITE);
@@ -420,36 +795,43 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         }
 
         // Draw Pac-Man
-        drawPacMan(g2);
+        drawPacMan(g2, f);
 
         // Draw Ghosts
-        drawGhost(g2, ghosts[0].x, ghosts[0].y, Color.RED);    // Red
-        drawGhost(g2, ghosts[1].x, ghosts[1].y, Color.CYAN);   // Blue
-        drawGhost(g2, ghosts[2].x, ghosts[2].y, Color.PINK);   // Pink
-        drawGhost(g2, ghosts[3].x, ghosts[3].y, Color.ORANGE); // Orange
+        for (int i = 0; i < f.ghostX.length; i++) {
+            drawGhost(g2, f, i);
+        }
 
         // Draw score and lives
         g2.setColor(Color.WHITE);
-        g2.setFont(new Font("Arial", Font.BOLD, 20)); 
-        g2.drawString("Score: " + score, 10, 25);
-        g2.drawString("Lives: " + lives, SCREEN_WIDTH - 100, 25);
-        g2.drawString("Level: " + currentLevel, SCREEN_WIDTH / 2 - 30, 25);
+        g2.setFont(HUD_FONT); 
+        g2.drawString(scoreLabel.of(f.score), 10, 25);
+        g2.drawString(livesLabel.of(f.lives), SCREEN_WIDTH - 100, 25);
+        g2.drawString(levelLabel.of(f.level), SCREEN_WIDTH / 2 - 30, 25);
+        
+        // Achieved update and frame rate, and how active rendering shows frames
+        g2.drawString(upsLabel.of(measuredUps), 10, SCREEN_HEIGHT - 10);
+        g2.drawString(fpsLabel.of(measuredFps), 110, SCREEN_HEIGHT - 10);
+        g2.drawString(lagLabel.of(measuredLagMillis), 210, SCREEN_HEIGHT - 10);
+        if (activeRenderer != null) {
+            g2.drawString(activeRenderer.pageFlipping() ? RENDER_FLIPPING : RENDER_BLITTING, 340, SCREEN_HEIGHT - 10);
+        }
     }
     
-    private void drawPauseScreen(Graphics2D g2) {
-        g2.setColor(new Color(0, 0, 0, 180));
+    private void drawPauseScreen(Graphics2D g2, Frame f) {
+        g2.setColor(OVERLAY_COLOR);
         g2.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
         
         g2.setColor(Color.YELLOW);
-        g2.setFont(new Font("Arial", Font.BOLD, 48));
+        g2.setFont(TITLE_FONT);
         String title = "PAUSED";
         int titleX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(title)) / 2;
         g2.drawString(title, titleX, SCREEN_HEIGHT / 3);
         
         // Draw pause menu options
-        g2.setFont(new Font("Arial", Font.BOLD, 32));
+        g2.setFont(MENU_FONT);
         for (int i = 0; i < PAUSE_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == f.selectedOption) {
                 g2.setColor(Color.YELLOW);
             } else {
                 g2.setColor(Color.WHITE);
@@ -460,26 +842,26 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         }
     }
     
-    private void drawGameOverScreen(Graphics2D g2) {
-        g2.setColor(new Color(0, 0, 0, 180));
+    private void drawGameOverScreen(Graphics2D g2, Frame f) {
+        g2.setColor(OVERLAY_COLOR);
         g2.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
         
         g2.setColor(Color.RED);
-        g2.setFont(new Font("Arial", Font.BOLD, 48));
+        g2.setFont(TITLE_FONT);
         String title = "GAME OVER";
         int titleX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(title)) / 2;
         g2.drawString(title, titleX, SCREEN_HEIGHT / 3);
         
         g2.setColor(Color.WHITE);
-        g2.setFont(new Font("Arial", Font.BOLD, 24));
-        String scoreText = "Final Score: " + score;
+        g2.setFont(SUBTITLE_FONT);
+        String scoreText = finalScoreLabel.of(f.score);
         int scoreX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(scoreText)) / 2;
         g2.drawString(scoreText, scoreX, SCREEN_HEIGHT / 2 - 20);
         
         // Draw game over options
-        g2.setFont(new Font("Arial", Font.BOLD, 32));
+        g2.setFont(MENU_FONT);
         for (int i = 0; i < GAME_OVER_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == f.selectedOption) {
                 g2.setColor(Color.YELLOW);
             } else {
                 g2.setColor(Color.WHITE);
@@ -490,26 +872,26 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         }
     }
     
-    private void drawGameWinScreen(Graphics2D g2) {
-        g2.setColor(new Color(0, 0, 0, 180));
+    private void drawGameWinScreen(Graphics2D g2, Frame f) {
+        g2.setColor(OVERLAY_COLOR);
         g2.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
         
         g2.setColor(Color.GREEN);
-        g2.setFont(new Font("Arial", Font.BOLD, 48));
+        g2.setFont(TITLE_FONT);
         String title = "YOU WIN!";
         int titleX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(title)) / 2;
         g2.drawString(title, titleX, SCREEN_HEIGHT / 3);
         
         g2.setColor(Color.WHITE);
-        g2.setFont(new Font("Arial", Font.BOLD, 24));
-        String scoreText = "Score: " + score;
+        g2.setFont(SUBTITLE_FONT);
+        String scoreText = scoreLabel.of(f.score);
         int scoreX = (SCREEN_WIDTH - g2.getFontMetrics().stringWidth(scoreText)) / 2;
         g2.drawString(scoreText, scoreX, SCREEN_HEIGHT / 2 - 20);
         
         // Draw win options
-        g2.setFont(new Font("Arial", Font.BOLD, 32));
+        g2.setFont(MENU_FONT);
         for (int i = 0; i < GAME_WIN_OPTIONS.length; i++) {
-            if (i == selectedMenuOption) {
+            if (i == f.selectedOption) {
                 g2.setColor(Color.YELLOW);
             } else {
                 g2.setColor(Color.WHITE);
@@ -520,47 +902,25 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         }
     }
 
-    private void drawPacMan(Graphics2D g2) {
-        g2.setColor(Color.YELLOW);
-
-        int startAngle = 0;
-        int arcAngle = 360;
-
-        if (pacManSpriteNum == 1) {
-            startAngle = 0;
-            arcAngle = 360;
-        } else if (pacManSpriteNum == 2) {
-            switch (pacManDirection) {
-                case "up":    startAngle = 135; arcAngle = 270; break;
-                case "down":  startAngle = 315; arcAngle = 270; break;
-                case "left":  startAngle = 225; arcAngle = 270; break;
-                case "right": startAngle = 45;  arcAngle = 270; break;
-                default:      startAngle = 0;   arcAngle = 360; break;
-            }
-        }
-        
-        g2.fillArc(pacManX, pacManY, TILE_SIZE, TILE_SIZE, startAngle, arcAngle);
+    private void drawPacMan(Graphics2D g2, Frame f) {
+        Image image = f.mouthOpen ? pacManFrames[1 + f.pacManDirection] : pacManFrames[0];
+        g2.drawImage(image, interpolate(f, f.prevPacManX, f.pacManX), interpolate(f, f.prevPacManY, f.pacManY), null);
     }
 
-    private void drawGhost(Graphics2D g2, int x, int y, Color color) {
-        g2.setColor(color);
-        g2.fillRect(x, y, TILE_SIZE, TILE_SIZE);
-        
-        g2.setColor(Color.WHITE);
-        g2.fillOval(x + TILE_SIZE/4, y + TILE_SIZE/4, TILE_SIZE/4, TILE_SIZE/4);
-        g2.fillOval(x + TILE_SIZE/2, y + TILE_SIZE/4, TILE_SIZE/4, TILE_SIZE/4);
-        g2.setColor(Color.BLACK);
-        g2.fillOval(x + TILE_SIZE/4 + 3, y + TILE_SIZE/4 + 3, TILE_SIZE/8, TILE_SIZE/8);
-        g2.fillOval(x + TILE_SIZE/2 + 3, y + TILE_SIZE/4 + 3, TILE_SIZE/8, TILE_SIZE/8);
+    private void drawGhost(Graphics2D g2, Frame f, int i) {
+        g2.drawImage(ghostFrames[i], interpolate(f, f.prevGhostX[i], f.ghostX[i]),
+                     interpolate(f, f.prevGhostY[i], f.ghostY[i]), null);
     }
 
     private void initializeMapAndCharacters() {
         map = new int[MAX_ROW][MAX_COL];
+        mapVersion++;
         
         pacManSpeed = 4;
         for (Ghost ghost : ghosts) {
             ghost.speed = 2;
         }
+        applyMazeSpeeds();
 
         for (int r = 0; r < MAX_ROW; r++) {
             String rowString = defaultTileMapLayout[r];
@@ -575,37 +935,37 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
                         break;
                     case ' ': // Food
                         map[r][c] = 2;
-                        foodLocations.add(new Point(c, r));
+                        foodRemaining++;
                         break;
                     case 'P': // Pac-Man start
                         map[r][c] = 0;
                         pacManX = x; pacManY = y;
                         initialPacManX = x; initialPacManY = y;
-                        pacManDirection = "right";
+                        pacManDirection = RIGHT;
                         break;
                     case 'r': // Red Ghost
                         map[r][c] = 0;
                         ghosts[0].x = x; ghosts[0].y = y;
                         ghosts[0].initialX = x; ghosts[0].initialY = y;
-                        ghosts[0].direction = "up";
+                        ghosts[0].direction = UP;
                         break;
                     case 'b': // Blue Ghost
                         map[r][c] = 0;
                         ghosts[1].x = x; ghosts[1].y = y;
                         ghosts[1].initialX = x; ghosts[1].initialY = y;
-                        ghosts[1].direction = "up";
+                        ghosts[1].direction = UP;
                         break;
                     case 'p': // Pink Ghost
                         map[r][c] = 0;
                         ghosts[2].x = x; ghosts[2].y = y;
                         ghosts[2].initialX = x; ghosts[2].initialY = y;
-                        ghosts[2].direction = "up";
+                        ghosts[2].direction = UP;
                         break;
                     case 'o': // Orange Ghost
                         map[r][c] = 0;
                         ghosts[3].x = x; ghosts[3].y = y;
                         ghosts[3].initialX = x; ghosts[3].initialY = y;
-                        ghosts[3].direction = "up";
+                        ghosts[3].direction = UP;
                         break;
                     default: // Empty space or tunnel
                         map[r][c] = 0;
@@ -616,9 +976,11 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     }
 
     public int getTileTypeAt(int pixelX, int pixelY) {
-        if (pixelY == TILE_SIZE * 7 || pixelY == TILE_SIZE * 11) {
-            if (pixelX < -TILE_SIZE) pixelX = SCREEN_WIDTH - 1;
-            if (pixelX >= SCREEN_WIDTH + TILE_SIZE) pixelX = 0;
+        // Past a side edge in a tunnel row is the other end of the tunnel
+        int tunnelRow = Math.floorDiv(pixelY, TILE_SIZE);
+        if ((pixelX < 0 || pixelX >= SCREEN_WIDTH) && tunnelRow >= 0 && tunnelRow < MAX_ROW
+                && tunnelRows[tunnelRow]) {
+            pixelX = Math.floorMod(pixelX, SCREEN_WIDTH);
         }
 
         if (pixelX < 0 || pixelX >= SCREEN_WIDTH || pixelY < 0 || pixelY >= SCREEN_HEIGHT) {
@@ -638,9 +1000,9 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
         if (row >= 0 && row < MAX_ROW && col >= 0 && col < MAX_COL) {
             if (map[row][col] == 2) {
                 map[row][col] = 0;
+                mapVersion++;
                 score += 10;
-                foodLocations.remove(new Point(col, row));
-                if (foodLocations.isEmpty()) {
+                if (--foodRemaining == 0) {
                     gameState = GameState.GAME_WIN;
                 }
             }
@@ -648,16 +1010,16 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     }
 
     public void checkCollisionPacManGhosts() {
-        Rectangle pacManHitbox = new Rectangle(pacManX + pacManSolidArea.x,
-                                             pacManY + pacManSolidArea.y,
-                                             pacManSolidArea.width,
-                                             pacManSolidArea.height);
+        pacManHitbox.setBounds(pacManX + pacManSolidArea.x,
+                               pacManY + pacManSolidArea.y,
+                               pacManSolidArea.width,
+                               pacManSolidArea.height);
 
         for (Ghost ghost : ghosts) {
-            Rectangle ghostHitbox = new Rectangle(ghost.x + ghostSolidArea.x, 
-                                                ghost.y + ghostSolidArea.y, 
-                                                ghostSolidArea.width, 
-                                                ghostSolidArea.height);
+            ghostHitbox.setBounds(ghost.x + ghostSolidArea.x,
+                                  ghost.y + ghostSolidArea.y,
+                                  ghostSolidArea.width,
+                                  ghostSolidArea.height);
             
             if (pacManHitbox.intersects(ghostHitbox)) {
                 lives--;
@@ -671,7 +1033,7 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
                     for (Ghost g : ghosts) {
                         g.x = g.initialX; 
                         g.y = g.initialY; 
-                        g.direction = "up";
+                        g.direction = UP;
                         g.directionChangeCounter = 0;
                     }
                 }
@@ -685,8 +1047,12 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
 
     @Override
     public void keyPressed(KeyEvent e) {
-        int code = e.getKeyCode();
-        
+        keyPressedAt.compareAndSet(0, System.nanoTime());
+        pendingKeys.offer(e.getKeyCode());
+        LockSupport.unpark(gameThread);
+    }
+
+    private void handleKey(int code) {
         switch (gameState) {
             case MAIN_MENU:
                 handleMainMenuInput(code);
@@ -752,19 +1118,19 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     
     private void handlePlayingInput(int code) {
         if (code == KeyEvent.VK_UP) {
-            pacManDirection = "up";
+            pacManDirection = UP;
             pacManSpriteNum = 2;
             pacManSpriteCounter = 0;
         } else if (code == KeyEvent.VK_DOWN) {
-            pacManDirection = "down";
+            pacManDirection = DOWN;
             pacManSpriteNum = 2;
             pacManSpriteCounter = 0;
         } else if (code == KeyEvent.VK_LEFT) {
-            pacManDirection = "left";
+            pacManDirection = LEFT;
             pacManSpriteNum = 2;
             pacManSpriteCounter = 0;
         } else if (code == KeyEvent.VK_RIGHT) {
-            pacManDirection = "right";
+            pacManDirection = RIGHT;
             pacManSpriteNum = 2;
             pacManSpriteCounter = 0;
         } else if (code == KeyEvent.VK_ESCAPE || code == KeyEvent.VK_P) {
@@ -849,16 +1215,92 @@ public class PacMan extends JPanel implements Runnable, KeyListener {
     @Override
     public void keyReleased(KeyEvent e) {}
     
+    // Everything painting needs, copied from the game state by the game thread.
+    // The game thread never refills a Frame the painting thread may hold (see
+    // frames), so painting reads it without locks and never sees half an
+    // update. The map and the ghost arrays are copied into the ones already
+    // there, and the map only when it changed.
+    private static final class Frame {
+        GameState state;
+        int selectedOption, selectedLevel;
+        int mapVersion = -1;
+        int[][] map = new int[0][];
+        int pacManX, pacManY, prevPacManX, prevPacManY, pacManDirection;
+        boolean mouthOpen;
+        int[] ghostX = new int[0], ghostY = new int[0], prevGhostX = new int[0], prevGhostY = new int[0];
+        int score, lives, level;
+        long updateTime;
+        long sequence, inputAt; // see publishFrame()
+
+        void fill(PacMan game) {
+            state = game.gameState;
+            selectedOption = game.selectedMenuOption;
+            selectedLevel = game.selectedLevelOption;
+            if (mapVersion != game.mapVersion) {
+                mapVersion = game.mapVersion;
+                if (map.length != game.map.length) {
+                    map = new int[game.map.length][];
+                }
+                for (int r = 0; r < map.length; r++) {
+                    if (map[r] == null || map[r].length != game.map[r].length) {
+                        map[r] = new int[game.map[r].length];
+                    }
+                    System.arraycopy(game.map[r], 0, map[r], 0, map[r].length);
+                }
+            }
+            pacManX = game.pacManX;
+            pacManY = game.pacManY;
+            prevPacManX = game.prevPacManX;
+            prevPacManY = game.prevPacManY;
+            pacManDirection = game.pacManDirection;
+            mouthOpen = game.pacManSpriteNum == 2;
+            int count = game.ghosts.length;
+            if (ghostX.length != count) {
+                ghostX = new int[count];
+                ghostY = new int[count];
+                prevGhostX = new int[count];
+                prevGhostY = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                Ghost ghost = game.ghosts[i];
+                ghostX[i] = ghost.x;
+                ghostY[i] = ghost.y;
+                prevGhostX[i] = ghost.prevX;
+                prevGhostY[i] = ghost.prevY;
+            }
+            score = game.score;
+            lives = game.lives;
+            level = game.currentLevel;
+            updateTime = game.lastUpdateTime;
+        }
+
+        // Whether both paint the same picture. The update time only moves
+        // things between their previous and current positions, so it does
+        // not count, nor do sequence and inputAt.
+        boolean looksLike(Frame other) {
+            return other != null
+                && state == other.state && selectedOption == other.selectedOption
+                && selectedLevel == other.selectedLevel && mapVersion == other.mapVersion
+                && pacManX == other.pacManX && pacManY == other.pacManY
+                && prevPacManX == other.prevPacManX && prevPacManY == other.prevPacManY
+                && pacManDirection == other.pacManDirection && mouthOpen == other.mouthOpen
+                && Arrays.equals(ghostX, other.ghostX) && Arrays.equals(ghostY, other.ghostY)
+                && Arrays.equals(prevGhostX, other.prevGhostX) && Arrays.equals(prevGhostY, other.prevGhostY)
+                && score == other.score && lives == other.lives && level == other.level;
+        }
+    }
+
     // Inner class for Ghost
     class Ghost {
         int x, y;
+        int prevX, prevY;
         int initialX, initialY;
         int speed;
-        String direction;
+        int direction;
         int directionChangeCounter;
         
         public Ghost() {
-            direction = "up";
+            direction = UP;
             directionChangeCounter = 0;
         }
     }